@@ -0,0 +1,67 @@
+package com.tajeldin.flashcard;
+
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.util.Random;
+
+/**
+ * import files used by the benchmarks: the real cards/spanish.txt deck and
+ * synthetic decks of a given size in the same text format.
+ */
+class BenchmarkDecks {
+
+	/** name of the real deck in the {@link #getDeck(String)} param values. */
+	static final String SPANISH = "spanish";
+
+	private static final String[] WORDS = { "la ceremonia", "an~adir",
+			"el me'todo", "la preocupacio'n", "sencillo", "el esfuerzo",
+			"definir", "la estampilla", "el embajador", "el volumen" };
+
+	/**
+	 * returns the import file for a benchmark param value: {@link #SPANISH}
+	 * for cards/spanish.txt, or a size like "4MB" for a synthetic deck.
+	 */
+	static File getDeck(String name) throws IOException {
+		if (name.equals(SPANISH)) {
+			String dir = System.getProperty("flashcard.cardsDir", "../cards");
+			return new File(dir, "spanish.txt");
+		}
+		int megabytes = Integer.parseInt(name.substring(0,
+				name.length() - 2));
+		return createSyntheticDeck(megabytes * 1024L * 1024L);
+	}
+
+	/**
+	 * write a temp deck of about the given size. Entries have the same shape
+	 * as the real deck, with accented and a few multi line texts.
+	 */
+	static File createSyntheticDeck(long size) throws IOException {
+		File file = File.createTempFile("synthetic", ".txt");
+		file.deleteOnExit();
+		Random random = new Random(42);
+		Writer out = new BufferedWriter(new OutputStreamWriter(
+				new FileOutputStream(file), "UTF-8"));
+		try {
+			out.write("#V1\n");
+			long written = 4;
+			for (int i = 0; written < size; ++i) {
+				String spanish = WORDS[random.nextInt(WORDS.length)] + " " + i;
+				if (i % 10 == 0) {
+					// a multi line text.
+					spanish += ";" + WORDS[random.nextInt(WORDS.length)];
+				}
+				String entry = "s=" + spanish + "\ne=word number " + i
+						+ "\n--\n";
+				out.write(entry);
+				written += entry.length();
+			}
+		} finally {
+			out.close();
+		}
+		return file;
+	}
+}
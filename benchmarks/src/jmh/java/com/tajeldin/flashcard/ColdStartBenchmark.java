@@ -0,0 +1,135 @@
+package com.tajeldin.flashcard;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * time to first card on a cold start. snapshot reads the {@link CardSnapshot}
+ * the app shows its first card from. query is the path without a snapshot:
+ * the first card is asked from a freshly started controller, which queries
+ * a stand-in db thread that answers right away. The real db first has to
+ * open the database and run the query, so query is a lower bound of that
+ * path.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.SingleShotTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 200)
+@Measurement(iterations = 1000)
+@Fork(1)
+public class ColdStartBenchmark {
+
+	private File _snapshotFile;
+
+	@Setup(Level.Trial)
+	public void setup() throws IOException {
+		_snapshotFile = File.createTempFile("snapshot", ".bin");
+		_snapshotFile.deleteOnExit();
+		PrefetchQueue queue = new PrefetchQueue(0);
+		Flashcard.Chain chain = new Flashcard.Chain();
+		for (int i = 0; i < AppConfig._snapshotSize; ++i) {
+			chain.append(createCard(i + 2));
+		}
+		queue.seed(chain, AppConfig._snapshotSize + 1);
+		Flashcard current = createCard(1);
+		CardSnapshot.write(_snapshotFile, 0, current, queue,
+				AppConfig._snapshotSize);
+		current.release();
+	}
+
+	private static Flashcard createCard(int id) {
+		Flashcard fc = Flashcard.acquire();
+		fc.setID(id);
+		fc.setLang1Str("word number " + id);
+		fc.setLang2Str("la palabra " + id);
+		fc.setKey(Flashcard.computeKey(fc.getLang1Str()));
+		return fc;
+	}
+
+	@Benchmark
+	public int snapshot() {
+		CardSnapshot snapshot = CardSnapshot.read(_snapshotFile);
+		Flashcard fc = snapshot.cards.removeFirst();
+		int id = fc.getID();
+		fc.release();
+		snapshot.cards.releaseAll();
+		return id;
+	}
+
+	@Benchmark
+	public boolean query(QueryState state) throws InterruptedException {
+		MsgDispatcher.sendMessageToController(MsgType.MSG_WARM_PREFETCH, 0, 0,
+				null);
+		MsgDispatcher.sendUniqueMessageToController(MsgType.MSG_GET_NEXT_FC);
+		return state._displayed.await(10, TimeUnit.SECONDS);
+	}
+
+	/**
+	 * a controller with a db that has no saved session and answers every
+	 * query with a full set, and a UI that counts down on the first displayed
+	 * card. The threads are started anew for each call of
+	 * {@link ColdStartBenchmark#query}.
+	 */
+	@State(Scope.Thread)
+	public static class QueryState {
+		private ExecutorMessageBus _bus;
+		private CountDownLatch _displayed;
+
+		@Setup(Level.Invocation)
+		public void setup() {
+			_bus = new ExecutorMessageBus();
+			_displayed = new CountDownLatch(1);
+			final CountDownLatch displayed = _displayed;
+			MsgDispatcher.setDbReaderEndpoints(null);
+			MsgDispatcher.setUiEndpoint(_bus.startEndpoint("ui",
+					new MessageBus.Receiver() {
+						public boolean handleMessage(BusMessage msg) {
+							if (msg.what == MsgType.MSG_DISPLAY_FC) {
+								((Flashcard) msg.obj).release();
+								displayed.countDown();
+							}
+							return true;
+						}
+					}));
+			MsgDispatcher.setDbEndpoint(_bus.startEndpoint("db",
+					new MessageBus.Receiver() {
+						public boolean handleMessage(BusMessage msg) {
+							if (msg.what == MsgType.MSG_DB_LOAD_SESSION) {
+								MsgDispatcher.sendMessageToController(
+										MsgType.MSG_RESTORE_SESSION, 0, 0, null);
+							} else if (msg.what == MsgType.MSG_QUERY_FC_SET) {
+								QueryResult qr = (QueryResult) msg.obj;
+								for (int i = 0; i < qr.limit; ++i) {
+									qr.maxId = qr.minId + i;
+									qr.chain.append(createCard(qr.maxId));
+								}
+								MsgDispatcher.sendMessageToController(
+										MsgType.MSG_RESULT_FC_SET, 0, 0, qr);
+							}
+							return true;
+						}
+					}));
+			new FlashcardController(_bus);
+		}
+
+		@TearDown(Level.Invocation)
+		public void tearDown() {
+			_bus.shutdown();
+		}
+	}
+}
@@ -0,0 +1,95 @@
+package com.tajeldin.flashcard;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * cost of the {@link Flashcard.Chain} operations for several chain lengths.
+ * Each benchmark leaves the chain as it found it, so the flashcards are
+ * acquired once per trial.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class FlashcardChainBenchmark {
+
+	@Param({ "1", "16", "256", "4096" })
+	public int length;
+
+	private Flashcard[] _cards;
+	private Flashcard.Chain _chain;
+	private Flashcard.Chain _other;
+
+	@Setup(Level.Trial)
+	public void setup() {
+		_cards = new Flashcard[length];
+		_chain = new Flashcard.Chain();
+		_other = new Flashcard.Chain();
+		for (int i = 0; i < length; ++i) {
+			_cards[i] = Flashcard.acquire();
+			_cards[i].setID(i + 1);
+			_chain.append(_cards[i]);
+		}
+	}
+
+	/**
+	 * move every flashcard from the front to the back of the chain.
+	 */
+	@Benchmark
+	public Flashcard.Chain rotate() {
+		for (int i = 0; i < length; ++i) {
+			_chain.append(_chain.removeFirst());
+		}
+		return _chain;
+	}
+
+	/**
+	 * empty the chain and build it again with prepend, reversing it.
+	 */
+	@Benchmark
+	public Flashcard.Chain drainPrepend() {
+		for (int i = 0; i < length; ++i) {
+			_other.prepend(_chain.removeFirst());
+		}
+		_chain.appendChain(_other);
+		return _chain;
+	}
+
+	/**
+	 * walk the chain like the prefetch queue does when looking for an id.
+	 */
+	@Benchmark
+	public int iterate() {
+		int sum = 0;
+		for (Flashcard fc = _chain.getHead(); fc != null; fc = Flashcard.Chain
+				.getNext(fc)) {
+			sum += fc.getID();
+		}
+		return sum;
+	}
+
+	/**
+	 * splice the chain into another one and back.
+	 */
+	@Benchmark
+	public Flashcard.Chain appendChain() {
+		_other.appendChain(_chain);
+		_chain.appendChain(_other);
+		return _chain;
+	}
+}
@@ -0,0 +1,97 @@
+package com.tajeldin.flashcard;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Threads;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * cost of a {@link Flashcard#acquire()} / {@link Flashcard#release()} pair
+ * with 1 to 8 threads contending for the pool. The burst variants hold more
+ * flashcards than fit in a thread local pool, so they also go through the
+ * shared pool (or the allocator once that is full).
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class FlashcardPoolBenchmark {
+
+	private static final int BURST_SIZE = 32;
+
+	private final Flashcard[] _burst = new Flashcard[BURST_SIZE];
+
+	private Flashcard acquireRelease() {
+		Flashcard fc = Flashcard.acquire();
+		fc.release();
+		return fc;
+	}
+
+	private Flashcard[] burst() {
+		for (int i = 0; i < BURST_SIZE; ++i) {
+			_burst[i] = Flashcard.acquire();
+		}
+		for (int i = 0; i < BURST_SIZE; ++i) {
+			_burst[i].release();
+		}
+		return _burst;
+	}
+
+	@Benchmark
+	@Threads(1)
+	public Flashcard acquireRelease1() {
+		return acquireRelease();
+	}
+
+	@Benchmark
+	@Threads(2)
+	public Flashcard acquireRelease2() {
+		return acquireRelease();
+	}
+
+	@Benchmark
+	@Threads(4)
+	public Flashcard acquireRelease4() {
+		return acquireRelease();
+	}
+
+	@Benchmark
+	@Threads(8)
+	public Flashcard acquireRelease8() {
+		return acquireRelease();
+	}
+
+	@Benchmark
+	@Threads(1)
+	public Flashcard[] burst1() {
+		return burst();
+	}
+
+	@Benchmark
+	@Threads(2)
+	public Flashcard[] burst2() {
+		return burst();
+	}
+
+	@Benchmark
+	@Threads(4)
+	public Flashcard[] burst4() {
+		return burst();
+	}
+
+	@Benchmark
+	@Threads(8)
+	public Flashcard[] burst8() {
+		return burst();
+	}
+}
@@ -0,0 +1,73 @@
+package com.tajeldin.flashcard;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * throughput of the text import parser, in entries (getNextEntry) or batches
+ * (getNextBatch) per second. The parser is reopened whenever it reaches the
+ * end of the file, so a small deck includes a bit of open cost.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class ImportFileParserBenchmark {
+
+	@Param({ BenchmarkDecks.SPANISH, "4MB", "16MB" })
+	public String deck;
+
+	private File _file;
+	private ImportFileParser _parser;
+
+	@Setup(Level.Trial)
+	public void setup() throws IOException {
+		_file = BenchmarkDecks.getDeck(deck);
+		_parser = new ImportFileParser(_file);
+	}
+
+	@TearDown(Level.Trial)
+	public void tearDown() {
+		_parser.close();
+	}
+
+	@Benchmark
+	public Flashcard getNextEntry() {
+		Flashcard fc = _parser.getNextEntry();
+		if (fc == null) {
+			_parser = new ImportFileParser(_file);
+			fc = _parser.getNextEntry();
+		}
+		fc.release();
+		return fc;
+	}
+
+	@Benchmark
+	public int getNextBatch() {
+		Flashcard.Chain chain = _parser.getNextBatch(AppConfig._importBatchSize);
+		if (chain.isEmpty()) {
+			_parser = new ImportFileParser(_file);
+			chain = _parser.getNextBatch(AppConfig._importBatchSize);
+		}
+		int size = chain.size();
+		chain.releaseAll();
+		return size;
+	}
+}
@@ -0,0 +1,36 @@
+package com.tajeldin.flashcard;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * ns/op of formatting a Spanish text for display. Run with the gc profiler
+ * (on by default in the build) for the allocation rate: a text without
+ * markers should not allocate at all, any other text only its result.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class StringFormatterBenchmark {
+
+	@Param({ "el esfuerzo", "la preocupacio'n", "an~adir;el me'todo;nin~o" })
+	public String text;
+
+	@Benchmark
+	public String formatSpanishString() {
+		return StringFormatter.formatSpanishString(text);
+	}
+}
@@ -0,0 +1,102 @@
+package com.tajeldin.flashcard;
+
+// TODO: use a configuration screen to set the params.
+
+/**
+ * Application configuration parameters. Encapsulate user modifiable application
+ * parameters. Initially, just a bunch of globals. Eventually, this class will
+ * utilize a configuration screen.
+ * values below.
+ */
+public class AppConfig {
+
+	/** full path of database file name */
+	public static String _dbFullPath = "/sdcard/AliFlashcard/ali.db";
+
+	/** full path of the card snapshot the app starts from */
+	public static String _snapshotPath = "/sdcard/AliFlashcard/snapshot.bin";
+
+	/** number of queued flashcards kept in the card snapshot */
+	public static int _snapshotSize = 8;
+
+	/** directory of the default import files, set from the external storage */
+	public static String _importDir = "/sdcard/AliFlashcard";
+
+	/** query result set size until the review pace of a level is measured */
+	public static int _initialQuerySetSize = 10;
+
+	/** minimum query result set size */
+	public static int _minQuerySetSize = 2;
+
+	/** maximum query result set size */
+	public static int _maxQuerySetSize = 50;
+
+	/**
+	 * a query fetches the flashcards the user reviews in this time (ms), see
+	 * ReviewPace
+	 */
+	public static long _queryRefillMillis = 10000;
+
+	/**
+	 * prefetch queue is replenished when it holds fewer flashcards than this,
+	 * until the review pace of its level is measured
+	 */
+	public static int _prefetchLowWatermark = 4;
+
+	/** number of supported levels */
+	public static int _numLevels = 3;
+
+	/** size of flashcard pool */
+	public static int _fcPoolSize = 20;
+
+	/**
+	 * if true, an import only writes the flashcards that changed since the
+	 * last import, otherwise all flashcards are replaced.
+	 */
+	public static boolean _diffImport = true;
+
+	/** if true, parse import file on its own thread while db inserts */
+	public static boolean _pipelinedImport = true;
+
+	/** number of flashcards per parsed batch in a pipelined import */
+	public static int _importBatchSize = 200;
+
+	/** max number of parsed batches waiting for the db in a pipelined import */
+	public static int _importRingSize = 4;
+
+	/** import files of at least this many bytes are parsed in parallel */
+	public static long _parallelParseMinSize = 4 * 1024 * 1024;
+
+	/** approximate number of bytes of import file parsed per parallel task */
+	public static int _parallelParseChunkSize = 1024 * 1024;
+
+	/** max number of flashcards inserted per transaction in a pipelined import */
+	public static int _importTxnSize = 2000;
+
+	/**
+	 * max time (ms) the db spends on import work per message before it lets
+	 * other messages in
+	 */
+	public static long _importSliceMillis = 50;
+
+	/** if true, imported texts are stored in the db ready for display */
+	public static boolean _formatOnImport = true;
+
+	/**
+	 * number of db reader threads that run queries in parallel with the
+	 * writer. Only used if the database can be put in WAL mode.
+	 */
+	public static int _dbReaderCount = 2;
+
+	/** if true, the latency of every message is recorded in MsgStats */
+	public static boolean _latencyStats = true;
+
+	/** if true, hot path events are recorded in the Trace rings */
+	public static boolean _trace = false;
+
+	/** max number of buffered card state changes before they are written */
+	public static int _stateFlushSize = 32;
+
+	/** max time (ms) a buffered card state change waits before being written */
+	public static long _stateFlushDelay = 5000;
+}
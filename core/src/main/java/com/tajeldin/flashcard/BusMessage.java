@@ -0,0 +1,34 @@
+package com.tajeldin.flashcard;
+
+/**
+ * A message delivered by a {@link MessageBus} to a
+ * {@link MessageBus.Receiver}. The fields have the same meaning as in
+ * android.os.Message, see {@link MsgType} for the args of each message type.
+ * <p>
+ * A bus may reuse the message object once the receiver returns, so the
+ * receiver must not keep a reference to it.
+ */
+public class BusMessage {
+	public int what;
+	public int arg1;
+	public int arg2;
+	public Object obj;
+
+	/**
+	 * the time (ms, on the clock of the bus) the message was queued for. This
+	 * includes the priority boost of the message type, see
+	 * {@link MsgDispatcher#getPriorityBoost(int)}.
+	 */
+	public long when;
+
+	public BusMessage() {
+	}
+
+	public BusMessage(int what, int arg1, int arg2, Object obj, long when) {
+		this.what = what;
+		this.arg1 = arg1;
+		this.arg2 = arg2;
+		this.obj = obj;
+		this.when = when;
+	}
+}
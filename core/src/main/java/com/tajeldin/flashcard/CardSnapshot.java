@@ -0,0 +1,160 @@
+package com.tajeldin.flashcard;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+
+/**
+ * Snapshot of the card on screen and the next few cards of its prefetch
+ * queue, with their state. It is written by the controller when the app
+ * state is saved, and read back when the app starts, so the first card is
+ * shown (and the next ones are served) before the database is even open.
+ * <p>
+ * All values are big endian. The layout is: <code>
+ * header:  int magic ("AFSS"), short version, short level, int maxId, int card count
+ * record:  int id, long key, int level, int right guess count, byte formatted,
+ *          int len1, byte[len1] lang1, int len2, byte[len2] lang2
+ * </code>
+ * <ul>
+ * <li>the first card is the one that was on screen.
+ * <li>maxId is where the prefetch queue continues its queries.
+ * <li>texts are UTF-8 encoded.
+ * </ul>
+ */
+public class CardSnapshot {
+
+	public static final int MAGIC = 0x41465353; // "AFSS"
+	public static final int VERSION = 1;
+
+	// a longer text means the file is corrupt.
+	private static final int MAX_TEXT_LENGTH = 64 * 1024;
+
+	/** the level of the cards. */
+	public final int level;
+
+	/** the prefetch queue of the level continues after this id. */
+	public final int maxId;
+
+	/** the card that was on screen followed by the queued cards. */
+	public final Flashcard.Chain cards = new Flashcard.Chain();
+
+	private CardSnapshot(int level, int maxId) {
+		this.level = level;
+		this.maxId = maxId;
+	}
+
+	/**
+	 * write a snapshot of the current card and the first maxQueued cards of
+	 * the given queue. The file is replaced atomically, so a crash while
+	 * writing leaves the old snapshot.
+	 */
+	public static void write(File file, int level, Flashcard current,
+			PrefetchQueue queue, int maxQueued) throws IOException {
+		int count = 1;
+		int maxId = queue.getMaxId();
+		Flashcard last = current;
+		Flashcard fc = queue.getHead();
+		for (; fc != null && count <= maxQueued; fc = Flashcard.Chain
+				.getNext(fc)) {
+			last = fc;
+			++count;
+		}
+		if (fc != null) {
+			// the cards after the last one written are queried again.
+			maxId = last.getID();
+		}
+
+		File tmp = new File(file.getPath() + ".tmp");
+		DataOutputStream dout = new DataOutputStream(new BufferedOutputStream(
+				new FileOutputStream(tmp)));
+		try {
+			dout.writeInt(MAGIC);
+			dout.writeShort(VERSION);
+			dout.writeShort(level);
+			dout.writeInt(maxId);
+			dout.writeInt(count);
+			writeCard(dout, current);
+			for (fc = queue.getHead(); --count > 0; fc = Flashcard.Chain
+					.getNext(fc)) {
+				writeCard(dout, fc);
+			}
+		} finally {
+			dout.close();
+		}
+		if (!tmp.renameTo(file)) {
+			tmp.delete();
+			throw new IOException("unable to rename " + tmp + " to " + file);
+		}
+	}
+
+	private static void writeCard(DataOutputStream dout, Flashcard fc)
+			throws IOException {
+		dout.writeInt(fc.getID());
+		dout.writeLong(fc.getKey());
+		dout.writeInt(fc.getLevel());
+		dout.writeInt(fc.getRightGuessCount());
+		dout.writeBoolean(fc.isFormatted());
+		writeText(dout, fc.getLang1Str());
+		writeText(dout, fc.getLang2Str());
+	}
+
+	private static void writeText(DataOutputStream dout, String text)
+			throws IOException {
+		byte[] bytes = text.getBytes("UTF-8");
+		dout.writeInt(bytes.length);
+		dout.write(bytes);
+	}
+
+	/**
+	 * read the snapshot in the given file. Returns null if there is no
+	 * snapshot or it can not be read.
+	 */
+	public static CardSnapshot read(File file) {
+		if (!file.exists())
+			return null;
+		CardSnapshot snapshot = null;
+		try {
+			DataInputStream din = new DataInputStream(new BufferedInputStream(
+					new FileInputStream(file)));
+			try {
+				if (din.readInt() != MAGIC || din.readShort() != VERSION)
+					return null;
+				snapshot = new CardSnapshot(din.readShort(), din.readInt());
+				int count = din.readInt();
+				for (int i = 0; i < count; ++i) {
+					Flashcard fc = Flashcard.acquire();
+					snapshot.cards.append(fc);
+					fc.setID(din.readInt());
+					fc.setKey(din.readLong());
+					fc.setLevel(din.readInt());
+					fc.setRightGuessCount(din.readInt());
+					fc.setFormatted(din.readBoolean());
+					fc.setLang1Str(readText(din));
+					fc.setLang2Str(readText(din));
+				}
+			} finally {
+				din.close();
+			}
+		} catch (IOException e) {
+			Logger.w(LP.TAG, "unable to read card snapshot: " + e);
+			if (snapshot != null)
+				snapshot.cards.releaseAll();
+			return null;
+		}
+		return snapshot;
+	}
+
+	private static String readText(DataInputStream din) throws IOException {
+		int len = din.readInt();
+		if (len < 0 || len > MAX_TEXT_LENGTH)
+			throw new IOException("bad text length " + len);
+		byte[] bytes = new byte[len];
+		din.readFully(bytes);
+		return new String(bytes, "UTF-8");
+	}
+}
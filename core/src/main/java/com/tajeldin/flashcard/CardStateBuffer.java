@@ -0,0 +1,137 @@
+package com.tajeldin.flashcard;
+
+/**
+ * Write-behind buffer of flashcard state changes (level and right guess
+ * count) owned by the database component. Changes are coalesced per card so
+ * only the latest change of a card that is updated several times is written
+ * when the buffer is flushed.
+ * <p>
+ * The buffer copies what it needs out of the flashcard, so the caller can
+ * release the flashcard right after {@link #put(Flashcard)}. The entries are
+ * kept in parallel arrays and looked up with a linear scan, which is cheap for
+ * the small capacity used and does not allocate.
+ * 
+ * Only the owning thread changes the buffer. {@link #put(Flashcard)},
+ * {@link #clear()}, {@link #setAppliedSeq(int)} and
+ * {@link #copyTo(CardStateBuffer, int, long)} are synchronized so that other
+ * threads can take a consistent copy, all other methods must only be used by
+ * the owning thread (or on such a copy).
+ */
+class CardStateBuffer {
+
+	private final int[] _ids;
+	private final long[] _keys;
+	private final int[] _levels;
+	private final int[] _counts;
+	private int _size = 0;
+	// sequence number of the last update that was put in the buffer.
+	private int _appliedSeq = 0;
+
+	CardStateBuffer(int capacity) {
+		_ids = new int[capacity];
+		_keys = new long[capacity];
+		_levels = new int[capacity];
+		_counts = new int[capacity];
+	}
+
+	/**
+	 * buffer the current state of the given flashcard, replacing any earlier
+	 * buffered state of the same card. Returns true if the buffer is now full
+	 * and must be flushed.
+	 */
+	synchronized boolean put(Flashcard fc) {
+		int i = indexOf(fc.getID());
+		if (i < 0) {
+			i = _size++;
+			_ids[i] = fc.getID();
+		}
+		_keys[i] = fc.getKey();
+		_levels[i] = fc.getLevel();
+		_counts[i] = fc.getRightGuessCount();
+		return _size == _ids.length;
+	}
+
+	/**
+	 * returns the index of the buffered state of the card with the given id or
+	 * -1 if there is none.
+	 */
+	int indexOf(int id) {
+		for (int i = 0; i < _size; ++i) {
+			if (_ids[i] == id)
+				return i;
+		}
+		return -1;
+	}
+
+	int size() {
+		return _size;
+	}
+
+	boolean isEmpty() {
+		return _size == 0;
+	}
+
+	synchronized boolean isFull() {
+		return _size == _ids.length;
+	}
+
+	synchronized void clear() {
+		_size = 0;
+	}
+
+	/**
+	 * record that the update with the given sequence number has been put in
+	 * the buffer (or dropped), and wake up the threads waiting for it.
+	 */
+	synchronized void setAppliedSeq(int seq) {
+		_appliedSeq = seq;
+		notifyAll();
+	}
+
+	/**
+	 * replace the content of the given buffer (of the same capacity) with a
+	 * copy of this buffer, once the update with the given sequence number has
+	 * been put in it. Waits at most waitMillis for that update and returns
+	 * false if the copy was taken without it.
+	 */
+	synchronized boolean copyTo(CardStateBuffer dst, int seq, long waitMillis) {
+		long deadline = System.nanoTime() / 1000000 + waitMillis;
+		boolean interrupted = false;
+		while (_appliedSeq < seq) {
+			long left = deadline - System.nanoTime() / 1000000;
+			if (left <= 0)
+				break;
+			try {
+				wait(left);
+			} catch (InterruptedException e) {
+				interrupted = true;
+			}
+		}
+		if (interrupted) {
+			Thread.currentThread().interrupt();
+		}
+		System.arraycopy(_ids, 0, dst._ids, 0, _size);
+		System.arraycopy(_keys, 0, dst._keys, 0, _size);
+		System.arraycopy(_levels, 0, dst._levels, 0, _size);
+		System.arraycopy(_counts, 0, dst._counts, 0, _size);
+		dst._size = _size;
+		dst._appliedSeq = _appliedSeq;
+		return _appliedSeq >= seq;
+	}
+
+	int getID(int i) {
+		return _ids[i];
+	}
+
+	long getKey(int i) {
+		return _keys[i];
+	}
+
+	int getLevel(int i) {
+		return _levels[i];
+	}
+
+	int getRightGuessCount(int i) {
+		return _counts[i];
+	}
+}
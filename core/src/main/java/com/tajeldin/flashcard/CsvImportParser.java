@@ -0,0 +1,339 @@
+package com.tajeldin.flashcard;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+
+/**
+ * a CsvImportParser imports flashcards from a comma separated values file
+ * (RFC 4180), such as the cards/spanish.csv file. Each record holds the
+ * Spanish phrase in the first column and the English phrase in the second
+ * column. Any further columns are ignored.
+ * <ul>
+ * <li>fields may be quoted with '"'. Quoted fields may contain commas, line
+ * breaks and '""' for a single quote.
+ * <li>records end with "\n", "\r\n" or "\r".
+ * <li>empty lines are skipped.
+ * <li>the phrases are imported as is, so the ";", "n~", "a'" conventions of
+ * the text format are also supported.
+ * </ul>
+ * The file must be UTF-8 encoded (a leading byte order mark is allowed). The
+ * file is scanned byte by byte in a single pass straight from a
+ * {@link FileChannel}, only the field values are turned into strings.
+ * <p>
+ * This class is not MT-safe, so it should only be used by a single thread.
+ */
+public class CsvImportParser implements ImportSource {
+
+	private static final int BUFFER_SIZE = 64 * 1024;
+
+	// scanner states.
+	private static final int FIELD_START = 0;
+	private static final int UNQUOTED = 1;
+	private static final int QUOTED = 2;
+	private static final int QUOTE_IN_QUOTED = 3;
+
+	private File _curFile;
+	private FileChannel _channel = null;
+	private boolean _gotEOF = false;
+	private long _fileLength = 0;
+
+	private final byte[] _buf = new byte[BUFFER_SIZE];
+	private final ByteBuffer _byteBuffer = ByteBuffer.wrap(_buf);
+	private int _pos = 0;
+	private int _limit = 0;
+	private long _bufOffset = 0;
+
+	// bytes of the field being scanned and the decoded field values of the
+	// current record.
+	private byte[] _field = new byte[256];
+	private int _fieldLen = 0;
+	private char[] _chars = new char[256];
+	private String _col0 = null;
+	private String _col1 = null;
+	private int _numFields = 0;
+
+	// the current line and the line the current record started on.
+	private int _lineNumber = 1;
+	private int _recordLine = 1;
+
+	// position right after the last returned record.
+	private long _resumeOffset = 0;
+	private int _resumeLine = 0;
+
+	public CsvImportParser(File file) {
+		this(file, 0, 0);
+	}
+
+	/**
+	 * create a parser for the records from the given offset to the end of the
+	 * file. The offset must be at the start of a record and lineOffset is the
+	 * number of lines before it.
+	 */
+	CsvImportParser(File file, long offset, int lineOffset) {
+		_curFile = file;
+		_lineNumber = lineOffset + 1;
+		_resumeOffset = offset;
+		_resumeLine = lineOffset;
+		if (!_curFile.exists()) {
+			throwError("File does not exist", null);
+		}
+		_fileLength = _curFile.length();
+		try {
+			_channel = new FileInputStream(_curFile).getChannel();
+			if (offset == 0) {
+				skipByteOrderMark();
+			} else {
+				_channel.position(offset);
+				_bufOffset = offset;
+			}
+		} catch (IOException e) {
+			throwError("Unable to open file", e);
+		}
+	}
+
+	/**
+	 * throw exception with filename and current line number added to the error
+	 * message.
+	 */
+	private void throwError(String errMsg, Throwable cause) {
+		throw new ImportFileParser.ParserError(errMsg, _curFile.toString(),
+				_lineNumber, cause);
+	}
+
+	private void skipByteOrderMark() throws IOException {
+		while (_limit < 3 && fill()) {
+		}
+		if (_limit >= 3 && (_buf[0] & 0xff) == 0xEF
+				&& (_buf[1] & 0xff) == 0xBB && (_buf[2] & 0xff) == 0xBF) {
+			_pos = 3;
+		}
+	}
+
+	/**
+	 * read more bytes from the file to the end of the buffer, or to the start
+	 * of the buffer once all of it was consumed. Returns false on end of file.
+	 */
+	private boolean fill() throws IOException {
+		if (_pos == _limit) {
+			_bufOffset += _limit;
+			_pos = 0;
+			_limit = 0;
+		}
+		_byteBuffer.limit(_buf.length);
+		_byteBuffer.position(_limit);
+		int n = _channel.read(_byteBuffer);
+		if (n < 0) {
+			return false;
+		}
+		_limit += n;
+		return true;
+	}
+
+	private void appendFieldByte(byte b) {
+		if (_fieldLen == _field.length) {
+			byte[] field = new byte[_field.length * 2];
+			System.arraycopy(_field, 0, field, 0, _fieldLen);
+			_field = field;
+		}
+		_field[_fieldLen++] = b;
+	}
+
+	/**
+	 * decode the scanned field and store it in the current record.
+	 */
+	private void endField() {
+		if (_numFields < 2) {
+			if (_chars.length < _fieldLen) {
+				_chars = new char[_fieldLen];
+			}
+			int n = ImportFileReader.decodeUtf8(_field, 0, _fieldLen, _chars);
+			String value = new String(_chars, 0, n);
+			if (_numFields == 0)
+				_col0 = value;
+			else
+				_col1 = value;
+		}
+		++_numFields;
+		_fieldLen = 0;
+	}
+
+	/**
+	 * called after a line break. If it was a "\r", also consume a "\n" right
+	 * after it, so a record always ends after its full line break.
+	 */
+	private void endLine(byte b) throws IOException {
+		++_lineNumber;
+		if (b == '\r' && (_pos < _limit || fill()) && _buf[_pos] == '\n') {
+			++_pos;
+		}
+	}
+
+	/**
+	 * scan the next record of the file. Returns false on end of file. The
+	 * record fields are left in _col0, _col1 and _numFields.
+	 */
+	private boolean nextRecord() throws IOException {
+		_numFields = 0;
+		_fieldLen = 0;
+		int state = FIELD_START;
+		boolean emptyRecord = true;
+		_recordLine = _lineNumber;
+
+		while (true) {
+			if (_pos == _limit && !fill()) {
+				// end of file.
+				_gotEOF = true;
+				if (state == QUOTED) {
+					throwError("Unterminated quoted field", null);
+				}
+				if (emptyRecord)
+					return false;
+				endField();
+				return true;
+			}
+
+			byte b = _buf[_pos++];
+
+			if (state == FIELD_START) {
+				if (b == '"') {
+					emptyRecord = false;
+					state = QUOTED;
+					continue;
+				}
+				// any other byte starts an unquoted field.
+				state = UNQUOTED;
+			}
+
+			switch (state) {
+			case UNQUOTED:
+				if (b == ',') {
+					emptyRecord = false;
+					endField();
+					state = FIELD_START;
+				} else if (b == '\n' || b == '\r') {
+					endLine(b);
+					if (emptyRecord && _fieldLen == 0) {
+						// skip empty lines.
+						_recordLine = _lineNumber;
+						state = FIELD_START;
+						continue;
+					}
+					endField();
+					return true;
+				} else {
+					emptyRecord = false;
+					appendFieldByte(b);
+				}
+				break;
+			case QUOTED:
+				if (b == '"') {
+					state = QUOTE_IN_QUOTED;
+				} else {
+					if (b == '\n')
+						++_lineNumber;
+					appendFieldByte(b);
+				}
+				break;
+			case QUOTE_IN_QUOTED:
+				if (b == '"') {
+					// escaped quote.
+					appendFieldByte(b);
+					state = QUOTED;
+				} else if (b == ',') {
+					endField();
+					state = FIELD_START;
+				} else if (b == '\n' || b == '\r') {
+					endLine(b);
+					endField();
+					return true;
+				} else {
+					throwError("Unexpected character after quoted field", null);
+				}
+				break;
+			}
+		}
+	}
+
+	/**
+	 * parse the next record in the import file and return the representative
+	 * Flashcard object that corresponds to it. Returns null is there are no
+	 * further records in the file.
+	 */
+	public Flashcard getNextEntry() {
+		if (_gotEOF)
+			return null;
+
+		boolean gotRecord = false;
+		try {
+			gotRecord = nextRecord();
+		} catch (IOException e) {
+			throwError("Error reading import file", e);
+		}
+		if (_gotEOF) {
+			close();
+		}
+		if (!gotRecord)
+			return null;
+
+		if (_numFields < 2 || _col0.length() == 0 || _col1.length() == 0) {
+			_lineNumber = _recordLine;
+			throwError("Missing phrase in entry", null);
+		}
+
+		Flashcard fc = Flashcard.acquire();
+		fc.setLang2Str(_col0);
+		fc.setLang1Str(_col1);
+		_resumeOffset = _bufOffset + _pos;
+		_resumeLine = _lineNumber - 1;
+		return fc;
+	}
+
+	public Flashcard.Chain getNextBatch(int count) {
+		Flashcard.Chain chain = new Flashcard.Chain();
+
+		for (int i = 0; i < count; ++i) {
+			Flashcard fc = getNextEntry();
+			if (fc == null) {
+				break;
+			}
+			chain.append(fc);
+		}
+
+		return chain;
+	}
+
+	/**
+	 * return how much progress has been made reading the file. This is based
+	 * on the exact number of bytes consumed so far.
+	 *
+	 * @return a value in the range 0-100 percent.
+	 */
+	public int getCompletedPercentEstimate() {
+		if (_fileLength == 0 || _channel == null)
+			return 100;
+		return (int) (((_bufOffset + _pos) * 100) / _fileLength);
+	}
+
+	public long getResumeOffset() {
+		return _resumeOffset;
+	}
+
+	public int getResumeLine() {
+		return _resumeLine;
+	}
+
+	public void close() {
+		_gotEOF = true;
+		if (_channel != null) {
+			try {
+				_channel.close();
+			} catch (IOException e) {
+				// nothing useful to do, we are done with the file anyway.
+			}
+			_channel = null;
+		}
+	}
+}
@@ -0,0 +1,311 @@
+package com.tajeldin.flashcard;
+
+import java.io.BufferedOutputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.Random;
+
+/**
+ * Compact binary deck format. A deck file holds already parsed flashcards so
+ * that importing it needs no text parsing at all. It is produced from a text
+ * or CSV import file by {@link #convert(File, File, boolean, boolean)} (or
+ * the command line {@link #main(String[])}) and imported by the db straight
+ * from a memory mapped {@link Reader}.
+ * <p>
+ * All values are big endian. The layout is: <code>
+ * header:  int magic ("AFDK"), short version, short flags, int card count
+ * record:  long key, [int id], int len1, byte[len1] lang1, int len2, byte[len2] lang2
+ * </code>
+ * <ul>
+ * <li>key is the card key ({@link Flashcard#computeKey(String)}) of the raw
+ * English text, so card state is kept no matter how the texts are stored.
+ * <li>the id is only present with {@link #FLAG_SHUFFLE_IDS}. The ids are a
+ * random permutation, so the deck is imported in shuffled order as is.
+ * <li>with {@link #FLAG_FORMATTED} the texts are stored ready for display.
+ * <li>texts are UTF-8 encoded.
+ * </ul>
+ */
+public class DeckFile {
+
+	public static final int MAGIC = 0x4146444B; // "AFDK"
+	public static final int VERSION = 1;
+
+	/** texts are stored formatted for display. */
+	public static final int FLAG_FORMATTED = 1;
+
+	/** each record holds a precomputed shuffled id. */
+	public static final int FLAG_SHUFFLE_IDS = 2;
+
+	static final int HEADER_SIZE = 12;
+
+	/**
+	 * returns true if the given file starts with the deck file magic number.
+	 */
+	public static boolean isDeckFile(File file) {
+		byte[] buf = new byte[4];
+		try {
+			FileInputStream in = new FileInputStream(file);
+			try {
+				if (in.read(buf) != 4)
+					return false;
+			} finally {
+				in.close();
+			}
+		} catch (IOException e) {
+			return false;
+		}
+		return ByteBuffer.wrap(buf).getInt() == MAGIC;
+	}
+
+	/**
+	 * convert a text or CSV import file to a deck file.
+	 *
+	 * @param formatted
+	 *            store the texts ready for display.
+	 * @param shuffleIds
+	 *            store a random shuffled id with each card.
+	 * @return the number of cards written.
+	 * @throws ImportFileParser.ParserError
+	 *             on a malformed import file.
+	 */
+	public static int convert(File in, File out, boolean formatted,
+			boolean shuffleIds) throws IOException {
+		ImportSource source = ImportSourceFactory.open(in);
+		StringFormatter formatter = new StringFormatter();
+		ShuffleIdGenerator idGenerator = shuffleIds ? new ShuffleIdGenerator(
+				new Random().nextLong()) : null;
+		int flags = (formatted ? FLAG_FORMATTED : 0)
+				| (shuffleIds ? FLAG_SHUFFLE_IDS : 0);
+		int count = 0;
+
+		DataOutputStream dout = new DataOutputStream(new BufferedOutputStream(
+				new FileOutputStream(out), 64 * 1024));
+		try {
+			dout.writeInt(MAGIC);
+			dout.writeShort(VERSION);
+			dout.writeShort(flags);
+			// the count is filled in once all cards are written.
+			dout.writeInt(0);
+
+			Flashcard.Chain chain;
+			while (!(chain = source.getNextBatch(AppConfig._importBatchSize))
+					.isEmpty()) {
+				for (Flashcard fc = chain.getHead(); fc != null; fc = Flashcard.Chain
+						.getNext(fc)) {
+					String lang1 = fc.getLang1Str();
+					String lang2 = fc.getLang2Str();
+					dout.writeLong(Flashcard.computeKey(lang1));
+					if (idGenerator != null) {
+						dout.writeInt(idGenerator.next());
+					}
+					if (formatted) {
+						lang1 = formatter.formatEnglish(lang1);
+						lang2 = formatter.formatSpanish(lang2);
+					}
+					writeText(dout, lang1);
+					writeText(dout, lang2);
+					++count;
+				}
+				chain.releaseAll();
+			}
+		} finally {
+			source.close();
+			dout.close();
+		}
+
+		RandomAccessFile raf = new RandomAccessFile(out, "rw");
+		try {
+			raf.seek(8);
+			raf.writeInt(count);
+		} finally {
+			raf.close();
+		}
+		return count;
+	}
+
+	private static void writeText(DataOutputStream dout, String text)
+			throws IOException {
+		byte[] bytes = text.getBytes("UTF-8");
+		dout.writeInt(bytes.length);
+		dout.write(bytes);
+	}
+
+	/**
+	 * command line converter: DeckFile [-f] [-s] &lt;import file&gt; &lt;deck
+	 * file&gt;. -f stores formatted texts, -s stores shuffled ids.
+	 */
+	public static void main(String[] args) throws IOException {
+		boolean formatted = false;
+		boolean shuffleIds = false;
+		int i = 0;
+		for (; i < args.length && args[i].startsWith("-"); ++i) {
+			if (args[i].equals("-f"))
+				formatted = true;
+			else if (args[i].equals("-s"))
+				shuffleIds = true;
+		}
+		if (args.length - i != 2) {
+			System.err.println("usage: DeckFile [-f] [-s] <import file> <deck file>");
+			System.exit(1);
+		}
+		int count = convert(new File(args[i]), new File(args[i + 1]),
+				formatted, shuffleIds);
+		System.out.println(count + " cards written to " + args[i + 1]);
+	}
+
+	/**
+	 * Reads the cards of a deck file straight from a memory mapped buffer.
+	 * The fields of the current card are valid after each call to
+	 * {@link #next()}.
+	 * <p>
+	 * This class is not MT-safe, so it should only be used by a single thread.
+	 */
+	public static class Reader {
+		private final File _file;
+		private final MappedByteBuffer _buf;
+		private final int _flags;
+		private final int _count;
+		private int _index = 0;
+		private byte[] _bytes = new byte[256];
+		private char[] _chars = new char[256];
+
+		// the current card.
+		long key;
+		int id;
+		String lang1;
+		String lang2;
+
+		/**
+		 * map the given deck file and validate its header.
+		 *
+		 * @throws ImportFileParser.ParserError
+		 *             if the file can not be mapped or is not a valid deck.
+		 */
+		public Reader(File file) {
+			this(file, HEADER_SIZE, 0);
+		}
+
+		/**
+		 * map the given deck file and continue reading it at a position
+		 * returned by {@link #getOffset()} and {@link #getIndex()}.
+		 */
+		Reader(File file, long offset, int index) {
+			_file = file;
+			try {
+				FileInputStream in = new FileInputStream(file);
+				try {
+					FileChannel channel = in.getChannel();
+					_buf = channel.map(FileChannel.MapMode.READ_ONLY, 0,
+							channel.size());
+				} finally {
+					// the mapping stays valid after the channel is closed.
+					in.close();
+				}
+			} catch (IOException e) {
+				throw new ImportFileParser.ParserError("Unable to open file",
+						file.toString(), 0, e);
+			}
+
+			if (_buf.remaining() < HEADER_SIZE || _buf.getInt() != MAGIC) {
+				throwError("Not a deck file");
+			}
+			int version = _buf.getShort();
+			if (version != VERSION) {
+				throwError("Unsupported deck version " + version);
+			}
+			_flags = _buf.getShort();
+			_count = _buf.getInt();
+			if (offset < HEADER_SIZE || offset > _buf.limit() || index < 0
+					|| index > _count) {
+				throwError("Invalid deck position " + offset);
+			}
+			_buf.position((int) offset);
+			_index = index;
+		}
+
+		private void throwError(String errMsg) {
+			throw new ImportFileParser.ParserError(errMsg, _file.toString(), 0,
+					null);
+		}
+
+		public int getCount() {
+			return _count;
+		}
+
+		public boolean hasFormattedText() {
+			return (_flags & FLAG_FORMATTED) != 0;
+		}
+
+		public boolean hasShuffleIds() {
+			return (_flags & FLAG_SHUFFLE_IDS) != 0;
+		}
+
+		/**
+		 * advance to the next card. Returns false once all cards were read.
+		 *
+		 * @throws ImportFileParser.ParserError
+		 *             if the file is truncated.
+		 */
+		public boolean next() {
+			if (_index >= _count)
+				return false;
+			try {
+				key = _buf.getLong();
+				id = hasShuffleIds() ? _buf.getInt() : 0;
+				lang1 = readText();
+				lang2 = readText();
+			} catch (BufferUnderflowException e) {
+				throwError("Truncated deck file at card " + _index);
+			}
+			++_index;
+			return true;
+		}
+
+		private String readText() {
+			int len = _buf.getInt();
+			if (len < 0 || len > _buf.remaining()) {
+				throw new BufferUnderflowException();
+			}
+			if (_bytes.length < len) {
+				_bytes = new byte[len];
+				_chars = new char[len];
+			}
+			_buf.get(_bytes, 0, len);
+			int n = ImportFileReader.decodeUtf8(_bytes, 0, len, _chars);
+			return new String(_chars, 0, n);
+		}
+
+		/**
+		 * returns the file offset of the next card.
+		 */
+		long getOffset() {
+			return _buf.position();
+		}
+
+		/**
+		 * returns the number of cards before the next card.
+		 */
+		int getIndex() {
+			return _index;
+		}
+
+		/**
+		 * return how many of the cards were read.
+		 *
+		 * @return a value in the range 0-100 percent.
+		 */
+		public int getCompletedPercentEstimate() {
+			if (_count == 0)
+				return 100;
+			return (int) ((_index * 100L) / _count);
+		}
+	}
+}
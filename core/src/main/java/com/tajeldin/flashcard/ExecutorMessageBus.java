@@ -0,0 +1,148 @@
+package com.tajeldin.flashcard;
+
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.concurrent.Executors;
+import java.util.concurrent.PriorityBlockingQueue;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * A {@link MessageBus} for a plain JVM. Each endpoint is a single thread
+ * executor whose work queue is ordered by message target time and then by
+ * send order, the same order an Android looper uses. Delayed messages are
+ * held by a shared timer thread and queued once they are due.
+ * <p>
+ * Used to run and load test the controller and message pipeline off-device.
+ * The threads are daemon threads, {@link #shutdown()} stops them all.
+ */
+public class ExecutorMessageBus implements MessageBus {
+
+	// start of the bus clock (ms). Like the uptime of a device, it is well
+	// past the largest priority boost, so boosted target times keep their
+	// order from the first message on.
+	private static final long CLOCK_START_MILLIS = 24 * 60 * 60 * 1000L;
+
+	private final long _startNanos = System.nanoTime();
+	private final AtomicLong _sequence = new AtomicLong();
+	private final ArrayList<ThreadPoolExecutor> _executors = new ArrayList<ThreadPoolExecutor>();
+	private final ScheduledExecutorService _timer = Executors
+			.newSingleThreadScheduledExecutor(new NamedThreadFactory("bus-timer"));
+
+	public synchronized Endpoint startEndpoint(String name, Receiver receiver) {
+		ThreadPoolExecutor executor = new ThreadPoolExecutor(1, 1, 0,
+				TimeUnit.MILLISECONDS, new PriorityBlockingQueue<Runnable>(),
+				new NamedThreadFactory(name));
+		// start the thread now, so every message goes through the queue.
+		executor.prestartAllCoreThreads();
+		_executors.add(executor);
+		return new ExecutorEndpoint(executor, receiver);
+	}
+
+	public long uptimeMillis() {
+		return (System.nanoTime() - _startNanos) / 1000000 + CLOCK_START_MILLIS;
+	}
+
+	/**
+	 * stop all endpoint threads. Messages that are still queued are dropped.
+	 */
+	public synchronized void shutdown() {
+		_timer.shutdownNow();
+		for (ThreadPoolExecutor executor : _executors) {
+			executor.shutdownNow();
+		}
+		_executors.clear();
+	}
+
+	/**
+	 * a queued message, ordered by target time and then by send order.
+	 */
+	private class Task implements Runnable, Comparable<Task> {
+		final BusMessage msg;
+		final long seq;
+		final Receiver receiver;
+
+		Task(BusMessage msg, long seq, Receiver receiver) {
+			this.msg = msg;
+			this.seq = seq;
+			this.receiver = receiver;
+		}
+
+		public void run() {
+			MsgDispatcher.dispatch(receiver, msg, uptimeMillis());
+		}
+
+		public int compareTo(Task other) {
+			if (msg.when != other.msg.when)
+				return msg.when < other.msg.when ? -1 : 1;
+			if (seq != other.seq)
+				return seq < other.seq ? -1 : 1;
+			return 0;
+		}
+	}
+
+	private class ExecutorEndpoint implements Endpoint {
+		private final ThreadPoolExecutor _executor;
+		private final Receiver _receiver;
+
+		ExecutorEndpoint(ThreadPoolExecutor executor, Receiver receiver) {
+			_executor = executor;
+			_receiver = receiver;
+		}
+
+		public boolean send(int what, int arg1, int arg2, Object obj,
+				long boostMillis) {
+			long when = Math.max(1, uptimeMillis() - boostMillis);
+			try {
+				_executor.execute(new Task(new BusMessage(what, arg1, arg2,
+						obj, when), _sequence.getAndIncrement(), _receiver));
+			} catch (RejectedExecutionException e) {
+				// the bus was shut down.
+				return false;
+			}
+			return true;
+		}
+
+		public boolean sendDelayed(final int what, final int arg1,
+				final int arg2, final Object obj, long delayMillis,
+				final long boostMillis) {
+			try {
+				_timer.schedule(new Runnable() {
+					public void run() {
+						send(what, arg1, arg2, obj, boostMillis);
+					}
+				}, delayMillis, TimeUnit.MILLISECONDS);
+			} catch (RejectedExecutionException e) {
+				return false;
+			}
+			return true;
+		}
+
+		public void removeMessages(int what) {
+			Iterator<Runnable> it = _executor.getQueue().iterator();
+			while (it.hasNext()) {
+				if (((Task) it.next()).msg.what == what) {
+					it.remove();
+				}
+			}
+		}
+	}
+
+	private static class NamedThreadFactory implements ThreadFactory {
+		private final String _name;
+
+		NamedThreadFactory(String name) {
+			_name = name;
+		}
+
+		public Thread newThread(Runnable r) {
+			Thread t = new Thread(r, _name);
+			t.setDaemon(true);
+			return t;
+		}
+	}
+}
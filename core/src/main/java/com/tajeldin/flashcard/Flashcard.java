@@ -0,0 +1,543 @@
+package com.tajeldin.flashcard;
+
+import java.lang.ref.WeakReference;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReference;
+
+// TODO: create a screen to show the flashcard cache hit rate.
+
+/**
+ * Flashcard holds one flashcard entry. This class is not MT safe but that
+ * should be OK in practice as we never simultaneously access the same flashcard
+ * entry from multiple threads.
+ * 
+ * This class also implements a pool of flashcard objects. Users of this class
+ * should never call the constructor directly, but rather use the
+ * {@link #acquire()} method to get a Flashcard instance. Once the user is done
+ * with the flashcard instance, {@link #release()} should be called.
+ * <p>
+ * The pool does not use any locks. Each thread keeps a small cache of
+ * released flashcards that only it touches. When that cache is full, it is
+ * pushed as a whole onto a shared lock-free (Treiber) stack. When it is empty,
+ * the thread takes the whole shared stack at once, which needs no
+ * compare-and-set on a next pointer and so cannot suffer from ABA when
+ * flashcards are reused. The pool statistics are kept per thread as well and
+ * summed up when read.
+ * <p>
+ * The shared stack and the thread caches together are kept within
+ * {@link AppConfig#_fcPoolSize}. The cache of a thread that has exited is
+ * moved to the shared stack, and its statistics are folded into a total, when
+ * the next thread is started or (at most once a second) when an acquire finds
+ * the pool empty.
+ */
+public class Flashcard implements Cloneable {
+	private int _id;
+	private long _key;
+	private String _lang1Str;
+	private String _lang2Str;
+	private int _level;
+	private int _rightGuessCount;
+	private boolean _formatted;
+
+	// internal data for maintaining linked lists of flashcards and caches.
+	private boolean _inUse;
+	private Flashcard _next;
+
+	// a pool of flashcard objects. The shared stack is linked through _next.
+	// _poolSize counts the flashcards in it and in all thread caches, and is
+	// kept at or below AppConfig._fcPoolSize.
+	private static final int LOCAL_CACHE_SIZE = 8;
+	private static final AtomicInteger _poolSize = new AtomicInteger(0);
+	// time (ns) of the last reclaim of exited threads from acquire().
+	private static final long RECLAIM_INTERVAL_NS = 1000000000L;
+	private static final AtomicLong _lastReclaim = new AtomicLong(
+			System.nanoTime() - RECLAIM_INTERVAL_NS);
+	private static final AtomicReference<Flashcard> _sharedHead = new AtomicReference<Flashcard>();
+	// the pools of all live threads (and of those that exited since the last
+	// reclaim), and the statistics of the reclaimed ones.
+	private static final CopyOnWriteArrayList<LocalPool> _localPools = new CopyOnWriteArrayList<LocalPool>();
+	private static final LocalPool _retiredPools = new LocalPool(null);
+	private static final ThreadLocal<LocalPool> _localPool = new ThreadLocal<LocalPool>() {
+		@Override
+		protected LocalPool initialValue() {
+			reclaimDeadPools();
+			LocalPool pool = new LocalPool(Thread.currentThread());
+			_localPools.add(pool);
+			return pool;
+		}
+	};
+
+	// private constructor so caller must use acquire() method
+	private Flashcard() {
+		init();
+	}
+
+	private void init() {
+		_inUse = false;
+		_id = -1;
+		_key = 0;
+		_lang1Str = null;
+		_lang2Str = null;
+		_level = 0;
+		_rightGuessCount = 0;
+		_formatted = false;
+	}
+
+	// -----------------------------------------------------------------------
+	// cache pool of previously used flashcards.
+	// -----------------------------------------------------------------------
+
+	/**
+	 * get an instance of Flashcard from the pool. If no instances already exist
+	 * in the pool, a new Flashcard is created.
+	 */
+	public static Flashcard acquire() {
+		LocalPool local = _localPool.get();
+		++local.acquireCount;
+		Flashcard fc = local.pop();
+		if (fc == null) {
+			if (local.refill() == 0 && isReclaimDue()) {
+				// flashcards may still sit in the cache of an exited thread.
+				reclaimDeadPools();
+				local.refill();
+			}
+			fc = local.pop();
+		}
+		if (fc == null) {
+			fc = new Flashcard();
+		} else {
+			++local.acquireHit;
+			_poolSize.decrementAndGet();
+		}
+
+		if (fc._inUse || fc._lang1Str != null || fc._lang2Str != null
+				|| fc._level != 0 || fc._rightGuessCount != 0) {
+			throw new IllegalStateException("Flashcard in pool was in use");
+		}
+		fc._next = null;
+		fc._inUse = true;
+		return fc;
+	}
+
+	/**
+	 * Override default shallow clone method with a method that acquires the
+	 * new instance from the FC pool.
+	 */
+	@Override
+	public Flashcard clone() {
+		Flashcard fc = acquire();
+		fc._id = this._id;
+		fc._key = this._key;
+		fc._lang1Str = this._lang1Str;
+		fc._lang2Str = this._lang2Str;
+		fc._level = this._level;
+		fc._rightGuessCount = this._rightGuessCount;
+		fc._formatted = this._formatted;
+		return fc;
+	}
+
+	/**
+	 * release this Flashcard back into the pool. If the pool is already at
+	 * capacity, then this method is a no-op (this flashcard will eventually be
+	 * cleared up by the GC).
+	 * 
+	 * Caller must not use this instance once it has been released.
+	 */
+	public void release() {
+		if (!_inUse) {
+			throw new IllegalStateException("releasing Flashcard not in use");
+		}
+
+		init();
+
+		LocalPool local = _localPool.get();
+		++local.releaseCount;
+
+		// reserve room in the pool before adding this instance to it.
+		if (_poolSize.incrementAndGet() > AppConfig._fcPoolSize) {
+			_poolSize.decrementAndGet();
+			return;
+		}
+		if (local.isFull()) {
+			local.spill();
+		}
+		local.push(this);
+		++local.releaseHit;
+	}
+
+	/**
+	 * link the given chain in front of the shared stack. The compare-and-set
+	 * is on the head only, so it is safe even if the head was taken and pushed
+	 * again in the meantime.
+	 */
+	private static void linkShared(Flashcard first, Flashcard last) {
+		Flashcard head;
+		do {
+			head = _sharedHead.get();
+			last._next = head;
+		} while (!_sharedHead.compareAndSet(head, first));
+	}
+
+	/**
+	 * returns true, for one caller only, if the last reclaim from acquire()
+	 * was at least {@link #RECLAIM_INTERVAL_NS} ago.
+	 */
+	private static boolean isReclaimDue() {
+		long now = System.nanoTime();
+		long last = _lastReclaim.get();
+		return now - last >= RECLAIM_INTERVAL_NS
+				&& _lastReclaim.compareAndSet(last, now);
+	}
+
+	/**
+	 * move the caches of exited threads to the shared stack and their
+	 * statistics to the retired total, and forget their pools.
+	 */
+	private static void reclaimDeadPools() {
+		for (LocalPool pool : _localPools) {
+			// a thread that has exited can not touch its pool any more, and
+			// isAlive() makes its last writes visible.
+			if (pool.isOwnerAlive() || !_localPools.remove(pool))
+				continue;
+			pool.spill();
+			synchronized (_retiredPools) {
+				_retiredPools.acquireCount += pool.acquireCount;
+				_retiredPools.acquireHit += pool.acquireHit;
+				_retiredPools.releaseCount += pool.releaseCount;
+				_retiredPools.releaseHit += pool.releaseHit;
+			}
+		}
+	}
+
+	/**
+	 * returns the number of flashcards in the pool, in the shared stack and
+	 * the thread caches.
+	 */
+	public static int getPoolSize() {
+		return _poolSize.get();
+	}
+
+	// pool use statistics, summed over all threads. The per thread counters
+	// are only written by their own thread, so reading them is contention free
+	// but a sum may be slightly behind a concurrent acquire/release.
+
+	public static int getPoolAcquireCount() {
+		int sum = _retiredPools.acquireCount;
+		for (LocalPool pool : _localPools)
+			sum += pool.acquireCount;
+		return sum;
+	}
+
+	public static int getPoolAcquireHit() {
+		int sum = _retiredPools.acquireHit;
+		for (LocalPool pool : _localPools)
+			sum += pool.acquireHit;
+		return sum;
+	}
+
+	public static int getPoolReleaseCount() {
+		int sum = _retiredPools.releaseCount;
+		for (LocalPool pool : _localPools)
+			sum += pool.releaseCount;
+		return sum;
+	}
+
+	public static int getPoolReleaseHit() {
+		int sum = _retiredPools.releaseHit;
+		for (LocalPool pool : _localPools)
+			sum += pool.releaseHit;
+		return sum;
+	}
+
+	/**
+	 * cache of released flashcards and pool statistics of a single thread.
+	 */
+	private static class LocalPool {
+		private final WeakReference<Thread> _owner;
+		private final Flashcard[] _cache = new Flashcard[LOCAL_CACHE_SIZE];
+		private int _size = 0;
+
+		volatile int acquireCount = 0;
+		volatile int acquireHit = 0;
+		volatile int releaseCount = 0;
+		volatile int releaseHit = 0;
+
+		LocalPool(Thread owner) {
+			_owner = new WeakReference<Thread>(owner);
+		}
+
+		boolean isOwnerAlive() {
+			Thread owner = _owner.get();
+			return owner != null && owner.isAlive();
+		}
+
+		boolean isFull() {
+			return _size == _cache.length;
+		}
+
+		Flashcard pop() {
+			if (_size == 0)
+				return null;
+			Flashcard fc = _cache[--_size];
+			_cache[_size] = null;
+			return fc;
+		}
+
+		void push(Flashcard fc) {
+			_cache[_size++] = fc;
+		}
+
+		/**
+		 * move the whole cache to the shared stack. The flashcards are already
+		 * counted in the pool size.
+		 */
+		void spill() {
+			if (_size == 0)
+				return;
+			for (int i = 0; i < _size - 1; ++i) {
+				_cache[i]._next = _cache[i + 1];
+			}
+			linkShared(_cache[0], _cache[_size - 1]);
+			for (int i = 0; i < _size; ++i) {
+				_cache[i] = null;
+			}
+			_size = 0;
+		}
+
+		/**
+		 * take the whole shared stack, keep as many flashcards as fit in the
+		 * cache and push the rest back. Only called with an empty cache.
+		 * Returns the number of flashcards added to the cache.
+		 */
+		int refill() {
+			Flashcard node = _sharedHead.getAndSet(null);
+			while (node != null && _size < _cache.length) {
+				Flashcard next = node._next;
+				node._next = null;
+				_cache[_size++] = node;
+				node = next;
+			}
+			int taken = _size;
+			if (node != null) {
+				// the rest goes back.
+				Flashcard last = node;
+				while (last._next != null) {
+					last = last._next;
+				}
+				linkShared(node, last);
+			}
+			return taken;
+		}
+	}
+
+	/**
+	 * compute the stable card key for the given lang1 string. The key
+	 * identifies a card across imports (its id changes on every import) and is
+	 * used as the integer primary key of the card state table. It is a 64-bit
+	 * FNV-1a hash of the string chars.
+	 * <p>
+	 * WARNING: keys are persisted in the database, so this function must never
+	 * change.
+	 */
+	public static long computeKey(String lang1) {
+		long h = 0xcbf29ce484222325L;
+		for (int i = 0, len = lang1.length(); i < len; ++i) {
+			h ^= lang1.charAt(i);
+			h *= 0x100000001b3L;
+		}
+		return h;
+	}
+
+	// -----------------------------------------------------------------------
+	// generated getters/setters
+	// -----------------------------------------------------------------------
+
+	public String getLang1Str() {
+		return _lang1Str;
+	}
+
+	public void setLang1Str(String lang1Str) {
+		_lang1Str = lang1Str;
+	}
+
+	public String getLang2Str() {
+		return _lang2Str;
+	}
+
+	public void setLang2Str(String lang2Str) {
+		_lang2Str = lang2Str;
+	}
+
+	public int getID() {
+		return _id;
+	}
+
+	public void setID(int id) {
+		_id = id;
+	}
+
+	public long getKey() {
+		return _key;
+	}
+
+	public void setKey(long key) {
+		_key = key;
+	}
+
+	public int getLevel() {
+		return _level;
+	}
+
+	public void setLevel(int level) {
+		_level = level;
+	}
+
+	public int getRightGuessCount() {
+		return _rightGuessCount;
+	}
+
+	public void setRightGuessCount(int count) {
+		_rightGuessCount = count;
+	}
+
+	/**
+	 * returns true if the lang1/lang2 strings are already formatted for
+	 * display (see {@link StringFormatter}).
+	 */
+	public boolean isFormatted() {
+		return _formatted;
+	}
+
+	public void setFormatted(boolean formatted) {
+		_formatted = formatted;
+	}
+
+	// -----------------------------------------------------------------------
+	// chain of flashcards. Flashcards are linked through their internal next
+	// pointer, so a flashcard can only be in one chain at a time.
+	// -----------------------------------------------------------------------
+
+	/**
+	 * a chain (singly linked list) of flashcards. The chain keeps track of its
+	 * head, tail and size, so appending, prepending, splicing another chain and
+	 * removing the first element are all O(1) operations.
+	 * <p>
+	 * This class is not MT safe. Ownership of a chain and the flashcards in it
+	 * is passed between threads as a whole, same as a single flashcard.
+	 */
+	public static class Chain {
+		private Flashcard _head = null;
+		private Flashcard _tail = null;
+		private int _size = 0;
+
+		/**
+		 * returns the first flashcard in the chain, null if chain is empty.
+		 * Use {@link #getNext(Flashcard)} to iterate over the chain.
+		 */
+		public Flashcard getHead() {
+			return _head;
+		}
+
+		public int size() {
+			return _size;
+		}
+
+		public boolean isEmpty() {
+			return _size == 0;
+		}
+
+		/**
+		 * appends the given node to the end of this chain.
+		 */
+		public void append(Flashcard node) {
+			node._next = null;
+			if (_tail == null) {
+				_head = node;
+			} else {
+				_tail._next = node;
+			}
+			_tail = node;
+			++_size;
+		}
+
+		/**
+		 * prepends the given node to the front of this chain.
+		 */
+		public void prepend(Flashcard node) {
+			node._next = _head;
+			_head = node;
+			if (_tail == null) {
+				_tail = node;
+			}
+			++_size;
+		}
+
+		/**
+		 * moves all the nodes of the other chain to the end of this chain. The
+		 * other chain is left empty.
+		 */
+		public void appendChain(Chain other) {
+			if (other._head == null)
+				return;
+			if (_tail == null) {
+				_head = other._head;
+			} else {
+				_tail._next = other._head;
+			}
+			_tail = other._tail;
+			_size += other._size;
+			other.clear();
+		}
+
+		/**
+		 * removes and returns the first node in the chain, null if chain is
+		 * empty. The removed node is detached from the chain by setting its
+		 * next pointer to null.
+		 */
+		public Flashcard removeFirst() {
+			Flashcard node = _head;
+			if (node == null)
+				return null;
+			_head = node._next;
+			if (_head == null) {
+				_tail = null;
+			}
+			node._next = null;
+			--_size;
+			return node;
+		}
+
+		/**
+		 * release all flashcards in this chain to the pool. The chain is left
+		 * empty.
+		 */
+		public void releaseAll() {
+			Flashcard node = _head;
+			clear();
+			while (node != null) {
+				Flashcard next = node._next;
+				node.release();
+				node = next;
+			}
+		}
+
+		/**
+		 * forget all nodes in the chain without releasing them.
+		 */
+		private void clear() {
+			_head = null;
+			_tail = null;
+			_size = 0;
+		}
+
+		/**
+		 * return next element of given node. Implemented as static to make it
+		 * obvious we are using given fc as a node in a chain.
+		 */
+		public static Flashcard getNext(Flashcard node) {
+			return node._next;
+		}
+	}
+}
@@ -0,0 +1,435 @@
+package com.tajeldin.flashcard;
+
+import java.io.File;
+import java.io.IOException;
+
+/**
+ * This controller class contains the business logic for the flashcard app.
+ * Users of this class (e.g. UI and DB components) should generally not call
+ * methods in this call directly. Rather, messages to this components must
+ * be dispatched through the {@link MsgDispatcher}.
+ * <p>
+ * The controller only depends on the {@link MessageBus}, so it runs on a
+ * device as well as on a plain JVM.
+ */
+public class FlashcardController implements MessageBus.Receiver {
+
+	/** file the latency statistics are written to. */
+	static final String STATS_FILE_NAME = "latency.txt";
+
+	/** file the trace is written to, see {@link TraceDecoder}. */
+	static final String TRACE_FILE_NAME = "trace.bin";
+
+	private ImportSource _importFileParser = null;
+	private DeckFile.Reader _importDeck = null;
+	private PrefetchQueue _prefetchQueue[] = null;
+	private boolean _waitingForLevelData = false;
+	private int _curLevel = 0;
+	// sequence number of the last card update sent to the db.
+	private int _updateSeq = 0;
+
+	public FlashcardController(MessageBus bus) {
+		this(bus, null);
+	}
+
+	/**
+	 * create the controller with the queued cards of a {@link CardSnapshot},
+	 * which are served before anything else (the card that was on screen has
+	 * already been taken off the snapshot by the UI). The snapshot may be
+	 * null.
+	 */
+	public FlashcardController(MessageBus bus, CardSnapshot snapshot) {
+		_prefetchQueue = new PrefetchQueue[AppConfig._numLevels];
+		for (int i = 0; i < AppConfig._numLevels; ++i) {
+			_prefetchQueue[i] = new PrefetchQueue(i);
+		}
+		if (snapshot != null) {
+			if (snapshot.level >= 0 && snapshot.level < AppConfig._numLevels) {
+				_curLevel = snapshot.level;
+				_prefetchQueue[_curLevel].seed(snapshot.cards, snapshot.maxId);
+			} else {
+				snapshot.cards.releaseAll();
+			}
+		}
+
+		MsgDispatcher.setControllerEndpoint(bus.startEndpoint("controller",
+				this));
+	}
+
+	public boolean handleMessage(BusMessage msg) {
+		switch (msg.what) {
+		case MsgType.MSG_MENU_IMPORT:
+			startImport(new ImportCheckpoint(
+					ImportSourceFactory.getDefaultImportFile(),
+					AppConfig._diffImport));
+			break;
+		case MsgType.MSG_RESUME_IMPORT:
+			resumeImport((ImportCheckpoint) msg.obj);
+			break;
+		case MsgType.MSG_MENU_DUMP_STATS:
+			dumpStats();
+			break;
+		case MsgType.MSG_SAVE_SESSION:
+			saveSession((SessionState) msg.obj);
+			break;
+		case MsgType.MSG_WARM_PREFETCH:
+			// the queues are filled once the saved session is restored.
+			MsgDispatcher.sendMessageToDB(MsgType.MSG_DB_LOAD_SESSION, 0, 0,
+					null);
+			break;
+		case MsgType.MSG_RESTORE_SESSION:
+			restoreSession((SessionState) msg.obj);
+			break;
+		case MsgType.MSG_IMPORT_FINISHED:
+			if (msg.arg1 != 0) {
+				resetQueues();
+			}
+			break;
+		case MsgType.MSG_CONTINUE_IMPORT:
+			continueImport();
+			break;
+		case MsgType.MSG_PROGRESS_ACTIVITY_STARTED:
+			if (_importDeck != null) {
+				startDeckImport();
+			} else if (AppConfig._pipelinedImport) {
+				startImportPipeline();
+			} else {
+				continueImport();
+			}
+			break;
+		case MsgType.MSG_GET_NEXT_FC:
+			getNextFlashcardToDisplay();
+			break;
+		case MsgType.MSG_RESULT_FC_SET:
+			handleFlashcardSetResponse((QueryResult) msg.obj);
+			break;
+		case MsgType.MSG_FC_GUESS_RESULT:
+			handleFlashcardGuessResult((Flashcard) msg.obj, msg.arg1 != 0);
+			break;
+		default:
+			Logger.e(LP.TAG, "[controller] unknown message type: " + msg.what);
+			return false;
+		}
+
+		return true;
+	}
+
+	/**
+	 * handle case where user has indicated a correct guess for a flashcard.
+	 * Increment the "right guess count" register and promote if needed.
+	 */
+	private void handleFlashcardGuessResult(Flashcard fc, boolean isCorrectGuess) {
+		if (isCorrectGuess) {
+			// right guess.
+			int rightCount = fc.getRightGuessCount() + 1;
+			// TODO: promote if needed.
+			fc.setRightGuessCount(rightCount);
+		} else {
+			// wrong guess: demote fc back to initial level.
+			fc.setLevel(0);
+			fc.setRightGuessCount(0);
+		}
+
+		// send message to db to update flashcard. Queries sent from now on
+		// must see this update (see PrefetchQueue#setUpdateSeq).
+		++_updateSeq;
+		for (int i = 0; i < AppConfig._numLevels; ++i) {
+			_prefetchQueue[i].setUpdateSeq(_updateSeq);
+		}
+		MsgDispatcher.sendMessageToDB(MsgType.MSG_UPDATE_FC, _updateSeq, 0, fc);
+	}
+
+	/**
+	 * Gets the next appropriate flashcard to be displayed. This function will
+	 * attempt to get the card from the right prefetch queue. If a flashcard was
+	 * already available, it will be immediately sent to the UI for display.
+	 * The prefetch queue replenishes itself once it runs low.
+	 * <p>
+	 * On the other hand, if the prefetch queue was empty, then the
+	 * {@link #_waitingForLevelData} flag will be set to indicate we are waiting
+	 * for data at this level.
+	 */
+	private void getNextFlashcardToDisplay() {
+		if (_waitingForLevelData) {
+			// already owe the UI a flashcard, collapse with that request.
+			return;
+		}
+
+		PrefetchQueue q = _prefetchQueue[_curLevel];
+		Flashcard fc = q.dequeue();
+
+		if (fc == null) {
+			Trace.event(Trace.FC_PREFETCH_MISS, _curLevel, q.getMissCount(),
+					q.getDequeueCount());
+			_waitingForLevelData = true;
+			return;
+		}
+
+		Trace.event(Trace.FC_PREFETCH_HIT, fc.getID(), _curLevel);
+		MsgDispatcher.sendMessageToUI(MsgType.MSG_DISPLAY_FC, 0, 0, fc);
+	}
+
+	/**
+	 * handle a response of a set of flashcards sent by the db component in
+	 * response to an earlier query.
+	 */
+	private void handleFlashcardSetResponse(QueryResult qr) {
+		Trace.event(Trace.FC_SET_RECEIVED, qr.level, qr.chain.size(), qr.maxId);
+		boolean isEmpty = qr.chain.isEmpty();
+		PrefetchQueue q = _prefetchQueue[qr.level];
+		if (!q.enqueueSet(qr)) {
+			Trace.event(Trace.FC_SET_STALE, qr.level, qr.minId);
+			return;
+		}
+
+		// if we were waiting for data at this level, display the flashcard.
+		if (_waitingForLevelData && _curLevel == qr.level) {
+			_waitingForLevelData = false;
+			if (isEmpty) {
+				// do not keep querying an empty level.
+				Logger.w(LP.TAG, "[controller] no flashcards at level " + qr.level);
+				return;
+			}
+			getNextFlashcardToDisplay();
+		}
+	}
+
+	/**
+	 * start the import process. The actual import takes place in
+	 * {@link #continueImport()}. However, that will not happen until we get the
+	 * {@link MsgType#MSG_PROGRESS_ACTIVITY_STARTED} from the ProgressActivity
+	 * once it has finished initializing itself.
+	 * <p>
+	 * The import starts at the position of the given checkpoint, which is the
+	 * start of the file for a new import.
+	 */
+	private void startImport(ImportCheckpoint checkpoint) {
+		// open the source first, so a missing or broken file is reported
+		// before anything else is started.
+		File file = checkpoint.getFile();
+		try {
+			if (ImportSourceFactory.getFormat(file) == ImportSourceFactory.FORMAT_DECK) {
+				if (checkpoint.offset < DeckFile.HEADER_SIZE) {
+					// a new import, or one interrupted before its first deck
+					// slice was committed: start at the first card.
+					checkpoint.offset = DeckFile.HEADER_SIZE;
+					checkpoint.line = 0;
+				}
+				_importDeck = new DeckFile.Reader(file, checkpoint.offset,
+						checkpoint.line);
+			} else {
+				_importFileParser = ImportSourceFactory.open(file,
+						checkpoint.offset, checkpoint.line);
+			}
+		} catch (ImportFileParser.ParserError e) {
+			Logger.e(LP.TAG, "[controller] unable to start import: "
+					+ e.getMessage());
+			if (checkpoint.isResume) {
+				// do not try to resume it again on the next start.
+				MsgDispatcher.sendMessageToDB(MsgType.MSG_DB_ABORT_IMPORT, 0,
+						0, null);
+			}
+			MsgDispatcher.sendMessageToUI(MsgType.MSG_SHOW_ERROR_MSG, 0, 0,
+					e.getMessage());
+			return;
+		}
+
+		// the queues are reset once the db reports the import finished (see
+		// resetQueues()). The snapshot holds cards (and state) from before
+		// the import.
+		new File(AppConfig._snapshotPath).delete();
+
+		ProgressActivityState.startProgress(checkpoint.isResume ? "Resuming Import"
+				: "Import Progress");
+
+		// notify UI to start the import status activity.
+		MsgDispatcher.sendMessageToUI(MsgType.MSG_LAUNCH_PROGRESS_ACTIVITY, 0,
+				0, null);
+
+		// notify db to prepare to start import. It saves the checkpoint, so
+		// the first one of a deck import is already a valid deck position.
+		MsgDispatcher.sendMessageToDB(MsgType.MSG_DB_START_IMPORT, 0, 0,
+				checkpoint);
+	}
+
+	/**
+	 * continue an import that was interrupted, unless the user already
+	 * started a new one.
+	 */
+	private void resumeImport(ImportCheckpoint checkpoint) {
+		if (ProgressActivityState.isActive) {
+			Logger.w(LP.TAG, "[controller] import in progress, not resuming "
+					+ checkpoint.fileName);
+			return;
+		}
+		startImport(checkpoint);
+	}
+
+	/**
+	 * drop the cards queued at every level, which may have been removed or
+	 * changed by an import, and query the current level again from the start.
+	 */
+	private void resetQueues() {
+		for (int i = 0; i < _prefetchQueue.length; ++i) {
+			_prefetchQueue[i].clear();
+		}
+		_prefetchQueue[_curLevel].replenishQueue();
+	}
+
+	/**
+	 * complete the session saved by the UI with the current level and the
+	 * position of each prefetch queue, write the snapshot and hand the
+	 * session to the db to be journaled.
+	 */
+	private void saveSession(SessionState session) {
+		session.level = _curLevel;
+		session.resumeIds = new int[_prefetchQueue.length];
+		for (int i = 0; i < _prefetchQueue.length; ++i) {
+			session.resumeIds[i] = _prefetchQueue[i].getResumeId();
+		}
+		saveSnapshot(session.current);
+		session.current = null;
+		MsgDispatcher.sendMessageToDB(MsgType.MSG_DB_SAVE_SESSION, 0, 0,
+				session);
+	}
+
+	/**
+	 * continue where the saved session left off: its level (unless a
+	 * snapshot already set it or a card is being waited for) and the position
+	 * of each prefetch queue that was not seeded by the snapshot. The cards of
+	 * the session go to the UI. Then the current queue is filled.
+	 */
+	private void restoreSession(SessionState session) {
+		if (session != null) {
+			if (_prefetchQueue[_curLevel].getHead() == null
+					&& !_waitingForLevelData && session.level >= 0
+					&& session.level < _prefetchQueue.length) {
+				_curLevel = session.level;
+			}
+			if (session.resumeIds != null) {
+				int n = Math.min(session.resumeIds.length,
+						_prefetchQueue.length);
+				for (int i = 0; i < n; ++i) {
+					_prefetchQueue[i].resumeAt(session.resumeIds[i]);
+				}
+			}
+			if (!MsgDispatcher.sendMessageToUI(MsgType.MSG_RESTORE_DISPLAY, 0,
+					0, session)) {
+				session.releaseCards();
+			}
+		}
+		_prefetchQueue[_curLevel].replenishQueue();
+	}
+
+	/**
+	 * write the card on screen and the next cards of the current level to
+	 * the {@link CardSnapshot} file.
+	 */
+	private void saveSnapshot(Flashcard current) {
+		if (current.getLang1Str() == null) {
+			// the UI copied a card that was already handed over with its
+			// guess result and released.
+			current.release();
+			return;
+		}
+		File file = new File(AppConfig._snapshotPath);
+		try {
+			CardSnapshot.write(file, _curLevel, current,
+					_prefetchQueue[_curLevel], AppConfig._snapshotSize);
+		} catch (IOException e) {
+			Logger.w(LP.TAG, "[controller] unable to write " + file + ": " + e);
+		} finally {
+			current.release();
+		}
+	}
+
+	/**
+	 * write the latency statistics to {@link #STATS_FILE_NAME} in the import
+	 * directory, where they can be pulled off the device. If tracing is on,
+	 * the trace is written to {@link #TRACE_FILE_NAME} as well.
+	 */
+	private void dumpStats() {
+		File file = new File(AppConfig._importDir, STATS_FILE_NAME);
+		try {
+			MsgStats.dumpToFile(file);
+			Logger.i(LP.TAG, "[controller] latency stats written to " + file);
+			if (AppConfig._trace) {
+				file = new File(AppConfig._importDir, TRACE_FILE_NAME);
+				Trace.dumpToFile(file);
+				Logger.i(LP.TAG, "[controller] trace written to " + file);
+			}
+		} catch (IOException e) {
+			MsgDispatcher.sendMessageToUI(MsgType.MSG_SHOW_ERROR_MSG, 0, 0,
+					"unable to write " + file);
+		}
+	}
+
+	/**
+	 * hand a binary deck over to the db, which bulk loads it and updates the
+	 * progress activity.
+	 */
+	private void startDeckImport() {
+		MsgDispatcher.sendMessageToDB(MsgType.MSG_DB_IMPORT_DECK, 0, 0,
+				_importDeck);
+		_importDeck = null;
+	}
+
+	/**
+	 * hand the import file parser over to an {@link ImportPipeline} and tell
+	 * the db to drain it. From here on the import is driven by the db, which
+	 * also updates the progress activity.
+	 */
+	private void startImportPipeline() {
+		if (_importFileParser == null) {
+			// pipeline already started.
+			return;
+		}
+
+		ImportPipeline pipeline = new ImportPipeline(_importFileParser);
+		_importFileParser = null;
+		pipeline.start();
+		MsgDispatcher.sendMessageToDB(MsgType.MSG_DB_DRAIN_IMPORT, 0, 0,
+				pipeline);
+	}
+
+	/**
+	 * send import progress message to the UI. The progress percent is extracted
+	 * from the import file parser. If the parser was already removed, the
+	 * progress is assumed to be at %100.
+	 */
+	private void sendImportProgressMsgToUI() {
+		if (_importFileParser != null) {
+			ProgressActivityState.progress = _importFileParser
+					.getCompletedPercentEstimate();
+		}
+		MsgDispatcher.sendMessageToUI(MsgType.MSG_UPDATE_PROGRESS, 0, 0, null);
+	}
+
+	/**
+	 * Called to import the next "chunk" from the import file into the database.
+	 */
+	private void continueImport() {
+		if (_importFileParser == null) {
+			// handle spurious continue import messages by bailing out on an
+			// already finished import.
+			return;
+		}
+
+		ImportPipeline.Batch batch;
+		batch = ImportPipeline.Batch.read(_importFileParser,
+				AppConfig._fcPoolSize);
+		if (batch.chain.isEmpty()) {
+			// no more flashcard to import. update progress activity and notify
+			// db.
+			ProgressActivityState.finishProgress();
+			_importFileParser.close();
+			_importFileParser = null;
+			MsgDispatcher.sendMessageToDB(MsgType.MSG_DB_FINISH_IMPORT, 0, 0,
+					null);
+		} else {
+			MsgDispatcher.sendMessageToDB(MsgType.MSG_INSERT_FC_SET, 0, 0,
+					batch);
+		}
+		sendImportProgressMsgToUI();
+	}
+}
@@ -0,0 +1,65 @@
+package com.tajeldin.flashcard;
+
+/**
+ * A set of positive flashcard ids. Used by a diff import to remember the
+ * cards that are still in the imported deck. The ids are kept in an open
+ * addressing hash table of ints, so a large deck costs a few bytes per card
+ * and no object per id.
+ *
+ * This class is not MT-safe, so it should only be used by a single thread.
+ */
+class IdSet {
+
+	private int[] _table = new int[1024];
+	private int _size = 0;
+
+	/**
+	 * add the given id (must be > 0). Returns false if it was already there.
+	 */
+	boolean add(int id) {
+		if (2 * (_size + 1) > _table.length) {
+			grow();
+		}
+		int mask = _table.length - 1;
+		int i = hash(id) & mask;
+		while (_table[i] != 0) {
+			if (_table[i] == id)
+				return false;
+			i = (i + 1) & mask;
+		}
+		_table[i] = id;
+		++_size;
+		return true;
+	}
+
+	boolean contains(int id) {
+		int mask = _table.length - 1;
+		int i = hash(id) & mask;
+		while (_table[i] != 0) {
+			if (_table[i] == id)
+				return true;
+			i = (i + 1) & mask;
+		}
+		return false;
+	}
+
+	int size() {
+		return _size;
+	}
+
+	private void grow() {
+		int[] old = _table;
+		_table = new int[old.length * 2];
+		_size = 0;
+		for (int i = 0; i < old.length; ++i) {
+			if (old[i] != 0) {
+				add(old[i]);
+			}
+		}
+	}
+
+	private static int hash(int id) {
+		// ids are already shuffled, just spread sequential ids a bit.
+		return id * 0x9E3779B9 >>> 7;
+	}
+}
@@ -0,0 +1,62 @@
+package com.tajeldin.flashcard;
+
+import java.io.File;
+
+/**
+ * Where an import can continue after the app was killed in the middle of
+ * it. The db saves a checkpoint in the same transaction as each batch of
+ * imported cards, so the checkpoint always matches the committed cards.
+ * <p>
+ * The checkpoint is only valid for the exact file it was taken for, so the
+ * file length and modification time are kept to detect a changed file.
+ */
+class ImportCheckpoint {
+	final String fileName;
+	final long fileLength;
+	final long fileModified;
+	final boolean diff;
+
+	/**
+	 * file offset right after the last committed entry. For a binary deck,
+	 * the offset of the next card record.
+	 */
+	long offset = 0;
+
+	/**
+	 * number of file lines before {@link #offset}. For a binary deck, the
+	 * number of cards before it.
+	 */
+	int line = 0;
+
+	// true if this checkpoint was loaded to resume an interrupted import.
+	final boolean isResume;
+
+	/**
+	 * create the checkpoint for a new import of the given file.
+	 */
+	ImportCheckpoint(File file, boolean diff) {
+		this(file.toString(), file.length(), file.lastModified(), diff, false);
+	}
+
+	ImportCheckpoint(String fileName, long fileLength, long fileModified,
+			boolean diff, boolean isResume) {
+		this.fileName = fileName;
+		this.fileLength = fileLength;
+		this.fileModified = fileModified;
+		this.diff = diff;
+		this.isResume = isResume;
+	}
+
+	File getFile() {
+		return new File(fileName);
+	}
+
+	/**
+	 * returns true if the file is still the one the checkpoint was taken for.
+	 */
+	boolean matchesFile() {
+		File file = getFile();
+		return file.exists() && file.length() == fileLength
+				&& file.lastModified() == fileModified;
+	}
+}
@@ -0,0 +1,290 @@
+package com.tajeldin.flashcard;
+
+import java.io.File;
+import java.io.IOException;
+
+// TODO: add import file parser testcase.
+
+/**
+ * an ImportFileParser is used for parsing the file of phrases to import into
+ * the application. The file consists of multiple entries delimited by "--" or
+ * "==".
+ * 
+ * An example file: <code>
+ * # comment line here
+ * e=English phrase 2
+ * s=Spanish phrase 1
+ * --
+ * i=5  // optional id attribute
+ * l=3  // optional level attribute
+ * e=ep2 // must always be specified
+ * s=sp2 // must always be specified
+ * --
+ * ...
+ * --
+ * </code>
+ * <ul>
+ * <li>the entry attributes may appear in any order within an entry.
+ * <li>A single entry may not have the same attribute specified multiple times.
+ * <li>the "e" and "s" attributes are required. All others are optional
+ * <li>an empty element is legal. two "--" lines in a row for example.
+ * <li>a ";" in the text will be translated to a newline.
+ * <li>"n~", "a'", "e'", "i'" in Spanish text will translate to accented letter.
+ * </ul>
+ * The file must be UTF-8 encoded (a leading byte order mark is allowed). It is
+ * read through an {@link ImportFileReader}, so only the attribute values are
+ * turned into strings.
+ */
+public class ImportFileParser implements ImportSource {
+	private File _curFile;
+	private boolean _gotEOF = false;
+	private ImportFileReader _reader = null;
+	private int _lineNumber = 0;
+	private long _bytesRead = 0;
+	private long _fileLength = 0;
+
+	// number of lines before the start of the parsed range.
+	private int _lineOffset = 0;
+
+	// position right after the last returned entry.
+	private long _resumeOffset = 0;
+	private int _resumeLine = 0;
+
+	public ImportFileParser(File file) {
+		this(file, 0, file.length(), 0);
+	}
+
+	/**
+	 * create a parser for the entries in the byte range [start, end) of the
+	 * file. Both offsets must be at the beginning of a line, and entries must
+	 * not cross them. lineOffset is the number of lines before start, so
+	 * errors report the right line of the file.
+	 */
+	ImportFileParser(File file, long start, long end, int lineOffset) {
+		_curFile = file;
+		_fileLength = file.length();
+		_bytesRead = start;
+		_lineOffset = lineOffset;
+		_resumeOffset = start;
+		_resumeLine = lineOffset;
+		if (!_curFile.exists()) {
+			throwError("File does not exist", null);
+		}
+		try {
+			_reader = new ImportFileReader(_curFile, start, end);
+		} catch (Exception e) {
+			throwError("Unable to open file", e);
+		}
+	}
+
+	/**
+	 * throw exception with filename and current line number added to the error
+	 * message.
+	 */
+	private void throwError(String errMsg, Throwable cause) {
+		throw new ParserError(errMsg, _curFile.toString(),
+				(_lineNumber == 0) ? 0 : _lineOffset + _lineNumber, cause);
+	}
+
+	/**
+	 * Advances the reader to the next line. This function will return false
+	 * and set _gotEOF on end of file.
+	 */
+	private boolean nextLine() {
+		boolean gotLine = false;
+
+		try {
+			gotLine = _reader.nextLine();
+		} catch (IOException e) {
+			throwError("Error reading import file", e);
+		}
+
+		_bytesRead = _reader.getOffset();
+		if (gotLine) {
+			_lineNumber = _reader.getLineNumber();
+		} else {
+			_gotEOF = true;
+			try {
+				_reader.close();
+			} catch (Exception e) {
+				throwError("Unable to close file", e);
+			}
+		}
+
+		return gotLine;
+	}
+
+	/**
+	 * returns the value of the "x=value" attribute on the current line.
+	 */
+	private String getAttributeValue() {
+		return _reader.decode(_reader.getLineStart() + 2, _reader.getLineEnd());
+	}
+
+	/**
+	 * parse the next entry in the import file and return the representative
+	 * Flashcard object that corresponds to it. Returns null is there are no
+	 * further entries in the file.
+	 */
+	public Flashcard getNextEntry() {
+		boolean isEmptyEntry = true;
+		if (_gotEOF)
+			return null;
+
+		Flashcard fc = Flashcard.acquire();
+
+		while (true) {
+			// -- Read the next line of input
+			nextLine();
+
+			// -- handle special lines (EOF, end of entry, comment)
+			if (_gotEOF) {
+				// if we reach EOF with an empty entry, discard empty entry.
+				if (isEmptyEntry) {
+					fc.release();
+					return null;
+				}
+				break;
+			} else if (_reader.lineStartsWith('-', '-')
+					|| _reader.lineStartsWith('=', '=')) {
+				// skip empty entries.
+				if (isEmptyEntry)
+					continue;
+				break;
+			} else if (_reader.getLineEnd() > _reader.getLineStart()
+					&& _reader.getBuffer()[_reader.getLineStart()] == '#') {
+				// skip comments
+				continue;
+			}
+
+			// -- handle data lines.
+			isEmptyEntry = false;
+			if (_reader.lineStartsWith('s', '=')) {
+				fc.setLang2Str(getAttributeValue());
+			} else if (_reader.lineStartsWith('e', '=')) {
+				fc.setLang1Str(getAttributeValue());
+			} else {
+				throwError("Unknown line format", null);
+			}
+		}
+
+		// -- validate data entry (should be separate function).
+		if ((fc.getLang1Str() == null) || (fc.getLang2Str() == null)) {
+			throwError("Missing phrase in entry", null);
+		}
+
+		_resumeOffset = _bytesRead;
+		_resumeLine = _lineOffset + _lineNumber;
+		return fc;
+	}
+
+	/**
+	 * read a batch of flashcard entries rather than a single entry. Up to count
+	 * entries will be read and returned as a chain in file order. The chain is
+	 * empty if there are no further entries in the file.
+	 */
+	public Flashcard.Chain getNextBatch(int count) {
+		Flashcard.Chain chain = new Flashcard.Chain();
+
+		for (int i = 0; i < count; ++i) {
+			Flashcard fc = getNextEntry();
+			if (fc == null) {
+				break;
+			}
+			chain.append(fc);
+		}
+
+		return chain;
+	}
+
+	/**
+	 * return how much progress has been made reading the file. This is based
+	 * on the exact number of bytes consumed so far.
+	 * 
+	 * @return a value in the range 0-100 percent.
+	 */
+	public int getCompletedPercentEstimate() {
+		if (_fileLength == 0)
+			return 100;
+		return (int) ((_bytesRead * 100) / _fileLength);
+	}
+
+	public long getResumeOffset() {
+		return _resumeOffset;
+	}
+
+	public int getResumeLine() {
+		return _resumeLine;
+	}
+
+	/**
+	 * returns the number of lines read so far, not counting the lines before
+	 * the start of the parsed range.
+	 */
+	int getLineNumber() {
+		return _lineNumber;
+	}
+
+	/**
+	 * close the file if the parser was not read to the end.
+	 */
+	public void close() {
+		if (_gotEOF)
+			return;
+		_gotEOF = true;
+		try {
+			_reader.close();
+		} catch (IOException e) {
+			// nothing useful to do, we are done with the file anyway.
+		}
+	}
+
+	/**
+	 * The exception class thrown by ImportFileParser. The message includes
+	 * the file name and line number of the error.
+	 */
+	public static class ParserError extends RuntimeException {
+		private static final long serialVersionUID = -6950531613013713353L;
+
+		private final String _errMsg;
+		private final String _fileName;
+		private final int _lineNumber;
+
+		public ParserError(String errMsg, Throwable cause) {
+			this(errMsg, null, 0, cause);
+		}
+
+		/**
+		 * @param lineNumber
+		 *            line of the error, 0 if unknown.
+		 */
+		public ParserError(String errMsg, String fileName, int lineNumber,
+				Throwable cause) {
+			super(formatMessage(errMsg, fileName, lineNumber), cause);
+			_errMsg = errMsg;
+			_fileName = fileName;
+			_lineNumber = lineNumber;
+		}
+
+		private static String formatMessage(String errMsg, String fileName,
+				int lineNumber) {
+			if (fileName == null)
+				return errMsg;
+			return errMsg + " [" + fileName + ":"
+					+ (lineNumber == 0 ? "<unknown>" : "" + lineNumber) + "]";
+		}
+
+		/**
+		 * returns a copy of this error with its line number shifted by the
+		 * given number of lines. Used when the line was counted from the
+		 * start of a part of the file.
+		 */
+		public ParserError addLineOffset(int lineOffset) {
+			if (_lineNumber == 0)
+				return this;
+			return new ParserError(_errMsg, _fileName,
+					_lineNumber + lineOffset, getCause());
+		}
+	}
+
+}
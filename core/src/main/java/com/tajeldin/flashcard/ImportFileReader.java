@@ -0,0 +1,278 @@
+package com.tajeldin.flashcard;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+
+/**
+ * Reads an import file line by line straight from a {@link FileChannel} into
+ * a reusable byte buffer. The lines are not turned into strings. Instead, the
+ * caller looks at the bytes of the current line and only decodes the parts it
+ * needs with {@link #decode(int, int)}. The file is always decoded as UTF-8 and
+ * a leading UTF-8 byte order mark is skipped.
+ * <p>
+ * The reader knows exactly how many bytes of the file have been consumed, so
+ * progress can be reported exactly. A reader can also be limited to a byte
+ * range of the file that starts and ends on line boundaries.
+ * 
+ * This class is not MT-safe, so it should only be used by a single thread.
+ */
+class ImportFileReader {
+
+	private static final int INITIAL_BUFFER_SIZE = 64 * 1024;
+
+	private final long _fileLength;
+	private final long _endOffset;
+	private FileChannel _channel;
+	private byte[] _buf = new byte[INITIAL_BUFFER_SIZE];
+	private ByteBuffer _byteBuffer = ByteBuffer.wrap(_buf);
+	private char[] _chars = new char[256];
+
+	// _buf[_pos, _limit) holds the bytes read from the file but not consumed
+	// yet. _bufOffset is the file offset of _buf[0].
+	private int _pos = 0;
+	private int _limit = 0;
+	private long _bufOffset = 0;
+	private boolean _gotEOF = false;
+
+	// the current line (without the line terminator) and its line number.
+	private int _lineStart = 0;
+	private int _lineEnd = 0;
+	private int _lineNumber = 0;
+
+	ImportFileReader(File file) throws IOException {
+		this(file, 0, file.length());
+	}
+
+	/**
+	 * create a reader for the lines that start in the byte range [start, end)
+	 * of the file. start must be the offset of the beginning of a line.
+	 */
+	ImportFileReader(File file, long start, long end) throws IOException {
+		_fileLength = file.length();
+		_endOffset = end;
+		_channel = new FileInputStream(file).getChannel();
+		_channel.position(start);
+		_bufOffset = start;
+		if (start == 0) {
+			skipByteOrderMark();
+		}
+	}
+
+	/**
+	 * skip the UTF-8 byte order mark (EF BB BF) at the start of the file.
+	 */
+	private void skipByteOrderMark() throws IOException {
+		while (_limit < 3 && fill()) {
+		}
+		if (_limit >= 3 && (_buf[0] & 0xff) == 0xEF
+				&& (_buf[1] & 0xff) == 0xBB && (_buf[2] & 0xff) == 0xBF) {
+			_pos = 3;
+		}
+	}
+
+	/**
+	 * read more bytes from the file to the end of the buffer. Returns false on
+	 * end of file.
+	 */
+	private boolean fill() throws IOException {
+		if (_gotEOF)
+			return false;
+		_byteBuffer.limit(_buf.length);
+		_byteBuffer.position(_limit);
+		int n = _channel.read(_byteBuffer);
+		if (n < 0) {
+			_gotEOF = true;
+			return false;
+		}
+		_limit += n;
+		return true;
+	}
+
+	/**
+	 * make room at the end of the buffer by moving the unconsumed bytes to the
+	 * front. The buffer is grown if it is already full of unconsumed bytes
+	 * (i.e. a single line is longer than the buffer).
+	 */
+	private void compact() {
+		if (_pos == 0) {
+			byte[] buf = new byte[_buf.length * 2];
+			System.arraycopy(_buf, 0, buf, 0, _limit);
+			_buf = buf;
+			_byteBuffer = ByteBuffer.wrap(_buf);
+			return;
+		}
+		System.arraycopy(_buf, _pos, _buf, 0, _limit - _pos);
+		_bufOffset += _pos;
+		_limit -= _pos;
+		_pos = 0;
+	}
+
+	/**
+	 * advance to the next line of the file. Returns false on end of file. The
+	 * line is available through {@link #getLineStart()} and
+	 * {@link #getLineEnd()} until the next call. "\n" and "\r\n" line
+	 * terminators are supported.
+	 */
+	boolean nextLine() throws IOException {
+		if (getOffset() >= _endOffset)
+			return false;
+
+		int scan = _pos;
+		while (true) {
+			while (scan < _limit && _buf[scan] != '\n') {
+				++scan;
+			}
+			if (scan < _limit)
+				break;
+
+			// no full line in buffer, read more.
+			int scanned = scan - _pos;
+			if (_limit == _buf.length) {
+				compact();
+			}
+			if (!fill()) {
+				if (_pos == _limit)
+					return false;
+				// last line without a line terminator.
+				scan = _limit;
+				break;
+			}
+			scan = _pos + scanned;
+		}
+
+		_lineStart = _pos;
+		_lineEnd = scan;
+		if (_lineEnd > _lineStart && _buf[_lineEnd - 1] == '\r') {
+			--_lineEnd;
+		}
+		_pos = (scan < _limit) ? scan + 1 : scan;
+		++_lineNumber;
+		return true;
+	}
+
+	/**
+	 * returns the buffer holding the current line. Only valid until the next
+	 * call to {@link #nextLine()}.
+	 */
+	byte[] getBuffer() {
+		return _buf;
+	}
+
+	int getLineStart() {
+		return _lineStart;
+	}
+
+	int getLineEnd() {
+		return _lineEnd;
+	}
+
+	/**
+	 * returns true if the current line starts with the two given ascii chars.
+	 */
+	boolean lineStartsWith(char c1, char c2) {
+		return _lineEnd - _lineStart >= 2 && _buf[_lineStart] == c1
+				&& _buf[_lineStart + 1] == c2;
+	}
+
+	/**
+	 * decode the UTF-8 bytes in _buf[start, end) into a string. Malformed
+	 * sequences are replaced by U+FFFD.
+	 */
+	String decode(int start, int end) {
+		if (_chars.length < end - start) {
+			_chars = new char[end - start];
+		}
+		int n = decodeUtf8(_buf, start, end, _chars);
+		return new String(_chars, 0, n);
+	}
+
+	/**
+	 * decode the UTF-8 bytes in buf[start, end) into chars. chars must have
+	 * room for at least end - start chars. Malformed sequences are replaced by
+	 * U+FFFD.
+	 * 
+	 * @return the number of chars written.
+	 */
+	static int decodeUtf8(byte[] buf, int start, int end, char[] chars) {
+		int n = 0;
+		int i = start;
+		while (i < end) {
+			int b = buf[i++];
+			if (b >= 0) {
+				chars[n++] = (char) b;
+				continue;
+			}
+
+			int cp;
+			int extra;
+			if ((b & 0xE0) == 0xC0) {
+				cp = b & 0x1F;
+				extra = 1;
+			} else if ((b & 0xF0) == 0xE0) {
+				cp = b & 0x0F;
+				extra = 2;
+			} else if ((b & 0xF8) == 0xF0) {
+				cp = b & 0x07;
+				extra = 3;
+			} else {
+				chars[n++] = '\uFFFD';
+				continue;
+			}
+			if (i + extra > end) {
+				chars[n++] = '\uFFFD';
+				break;
+			}
+			boolean valid = true;
+			for (int k = 0; k < extra; ++k) {
+				int cb = buf[i + k];
+				if ((cb & 0xC0) != 0x80) {
+					valid = false;
+					break;
+				}
+				cp = (cp << 6) | (cb & 0x3F);
+			}
+			if (!valid) {
+				chars[n++] = '\uFFFD';
+				continue;
+			}
+			i += extra;
+			if (cp >= 0x10000) {
+				// supplementary code point needs a surrogate pair.
+				cp -= 0x10000;
+				chars[n++] = (char) (0xD800 | (cp >> 10));
+				chars[n++] = (char) (0xDC00 | (cp & 0x3FF));
+			} else {
+				chars[n++] = (char) cp;
+			}
+		}
+		return n;
+	}
+
+	/**
+	 * returns the number of bytes consumed from the file so far.
+	 */
+	long getOffset() {
+		return _bufOffset + _pos;
+	}
+
+	long getFileLength() {
+		return _fileLength;
+	}
+
+	/**
+	 * returns the line number of the current line (first line is 1).
+	 */
+	int getLineNumber() {
+		return _lineNumber;
+	}
+
+	void close() throws IOException {
+		if (_channel != null) {
+			_channel.close();
+			_channel = null;
+		}
+	}
+}
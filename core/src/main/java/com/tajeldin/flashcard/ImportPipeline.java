@@ -0,0 +1,198 @@
+package com.tajeldin.flashcard;
+
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * ImportPipeline runs the import source on its own producer thread so
+ * that parsing overlaps with the database inserts. Parsed batches are handed
+ * to the db component through a bounded ring of {@link AppConfig#_importRingSize}
+ * batches. When the ring is full, the parser blocks until the db has caught
+ * up (backpressure), so at most a few batches of flashcards are in flight.
+ * <p>
+ * The producer owns the flashcards it acquires until they are put in the ring.
+ * Ownership of a batch taken from the ring passes to the db component.
+ * <p>
+ * The producer always ends the ring with an end marker, even if the parser
+ * fails, so the consumer sees {@link #isDone()} and the error instead of
+ * waiting for more batches.
+ */
+class ImportPipeline extends Thread {
+
+	/**
+	 * a batch of parsed flashcards along with the parser progress and resume
+	 * position at the end of the batch.
+	 */
+	static class Batch {
+		final Flashcard.Chain chain;
+		final int count;
+		final int progress;
+		final long resumeOffset;
+		final int resumeLine;
+
+		Batch(Flashcard.Chain chain, int progress, long resumeOffset,
+				int resumeLine) {
+			this.chain = chain;
+			this.count = chain.size();
+			this.progress = progress;
+			this.resumeOffset = resumeOffset;
+			this.resumeLine = resumeLine;
+		}
+
+		/**
+		 * create a batch with the next entries of the given source.
+		 */
+		static Batch read(ImportSource source, int count) {
+			Flashcard.Chain chain = source.getNextBatch(count);
+			return new Batch(chain, source.getCompletedPercentEstimate(),
+					source.getResumeOffset(), source.getResumeLine());
+		}
+	}
+
+	// marker put in the ring after the last batch.
+	private static final Batch END = new Batch(new Flashcard.Chain(), 100, 0,
+			0);
+
+	// how long the producer waits for room in the ring before checking if the
+	// import was cancelled.
+	private static final long OFFER_TIMEOUT_MS = 100;
+
+	/**
+	 * java priority of the import threads. Maps to
+	 * Process.THREAD_PRIORITY_BACKGROUND on Android.
+	 */
+	static final int BACKGROUND_PRIORITY = Thread.NORM_PRIORITY - 1;
+
+	private final ImportSource _parser;
+	private final ArrayBlockingQueue<Batch> _ring;
+	private volatile boolean _cancelled = false;
+	private volatile String _errorMsg = null;
+	// unexpected failure of the producer thread, null if none.
+	private volatile Throwable _failure = null;
+	private boolean _gotEnd = false;
+
+	// throughput statistics. Only accessed by the consumer thread.
+	private long _startTime = 0;
+	private int _cardCount = 0;
+
+	ImportPipeline(ImportSource parser) {
+		super("import");
+		_parser = parser;
+		_ring = new ArrayBlockingQueue<Batch>(AppConfig._importRingSize);
+	}
+
+	@Override
+	public void run() {
+		setPriority(BACKGROUND_PRIORITY);
+		try {
+			while (!_cancelled) {
+				Batch batch = Batch.read(_parser, AppConfig._importBatchSize);
+				if (batch.chain.isEmpty()) {
+					break;
+				}
+				if (!put(batch)) {
+					batch.chain.releaseAll();
+				}
+			}
+		} catch (ImportFileParser.ParserError e) {
+			_errorMsg = e.getMessage();
+		} catch (Throwable t) {
+			_failure = t;
+			Logger.e(LP.TAG, "[import] parser thread failed: " + t);
+		} finally {
+			try {
+				_parser.close();
+			} finally {
+				put(END);
+			}
+		}
+	}
+
+	/**
+	 * put the batch in the ring, waiting for room if needed. Returns false if
+	 * the import was cancelled before the batch could be added.
+	 */
+	private boolean put(Batch batch) {
+		try {
+			while (!_cancelled) {
+				if (_ring.offer(batch, OFFER_TIMEOUT_MS, TimeUnit.MILLISECONDS)) {
+					return true;
+				}
+			}
+		} catch (InterruptedException e) {
+			_cancelled = true;
+		}
+		return false;
+	}
+
+	// -----------------------------------------------------------------------
+	// consumer side. Only called from the db thread.
+	// -----------------------------------------------------------------------
+
+	/**
+	 * take the next batch from the ring without waiting, so the db thread is
+	 * never parked on the producer. Returns null if no batch was available or
+	 * the last batch was already taken.
+	 */
+	Batch take() {
+		if (_gotEnd)
+			return null;
+		if (_startTime == 0)
+			_startTime = System.nanoTime() / 1000000;
+
+		Batch batch = _ring.poll();
+		if (batch == END) {
+			_gotEnd = true;
+			return null;
+		}
+		if (batch != null) {
+			_cardCount += batch.count;
+		}
+		return batch;
+	}
+
+	/**
+	 * returns true once the last batch has been taken from the ring.
+	 */
+	boolean isDone() {
+		return _gotEnd;
+	}
+
+	/**
+	 * returns the parser error message if the import stopped due to an error
+	 * or a failure of the producer thread, null otherwise. Only valid once
+	 * {@link #isDone()} returns true.
+	 */
+	String getErrorMsg() {
+		if (_errorMsg != null)
+			return _errorMsg;
+		if (_failure != null)
+			return "import failed: " + _failure;
+		return null;
+	}
+
+	/**
+	 * stop the producer and release all batches that are still in the ring.
+	 */
+	void cancel() {
+		_cancelled = true;
+		Batch batch;
+		while ((batch = _ring.poll()) != null) {
+			batch.chain.releaseAll();
+		}
+		_gotEnd = true;
+	}
+
+	int getCardCount() {
+		return _cardCount;
+	}
+
+	/**
+	 * log the number of imported cards and the import throughput.
+	 */
+	void logThroughput() {
+		long elapsed = Math.max(1, System.nanoTime() / 1000000 - _startTime);
+		Logger.i(LP.TAG, "[import] " + _cardCount + " cards in " + elapsed
+				+ " ms (" + (_cardCount * 1000L / elapsed) + " cards/sec)");
+	}
+}
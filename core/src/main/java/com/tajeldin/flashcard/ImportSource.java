@@ -0,0 +1,45 @@
+package com.tajeldin.flashcard;
+
+/**
+ * A source of flashcards for an import operation (e.g. a parsed import file).
+ * Use {@link ImportSourceFactory} to get the right source for a file.
+ * <p>
+ * The source owns the flashcards it acquires until they are returned from
+ * {@link #getNextBatch(int)}.
+ */
+public interface ImportSource {
+
+	/**
+	 * read the next batch of up to count flashcards as a chain in file order.
+	 * The chain is empty if there are no further entries.
+	 * 
+	 * @throws ImportFileParser.ParserError
+	 *             on a malformed or unreadable file.
+	 */
+	Flashcard.Chain getNextBatch(int count);
+
+	/**
+	 * return how much of the source has been read.
+	 * 
+	 * @return a value in the range 0-100 percent.
+	 */
+	int getCompletedPercentEstimate();
+
+	/**
+	 * returns the file offset right after the last entry returned by
+	 * {@link #getNextBatch(int)}. A later import can continue there (see
+	 * {@link ImportSourceFactory#open(java.io.File, long, int)}).
+	 */
+	long getResumeOffset();
+
+	/**
+	 * returns the number of file lines before {@link #getResumeOffset()}.
+	 */
+	int getResumeLine();
+
+	/**
+	 * release any resources (files, threads) still held by the source. Safe to
+	 * call more than once.
+	 */
+	void close();
+}
@@ -0,0 +1,143 @@
+package com.tajeldin.flashcard;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+
+/**
+ * Creates the {@link ImportSource} that matches an import file. The format is
+ * picked by the file extension (".txt", ".csv" or ".deck"). Files with any
+ * other extension are sniffed: a file that starts with the {@link DeckFile}
+ * magic number is a binary deck, a file that starts with a "#" comment or an
+ * "x=", "--" or "==" line is read as the text format, anything else as CSV.
+ * <p>
+ * Binary decks are not parsed, they are bulk loaded by the db through a
+ * {@link DeckFile.Reader}.
+ */
+public class ImportSourceFactory {
+
+	/** the import file formats. */
+	static final int FORMAT_TEXT = 0;
+	static final int FORMAT_CSV = 1;
+	static final int FORMAT_DECK = 2;
+
+	// number of bytes looked at when sniffing the file format.
+	private static final int SNIFF_SIZE = 256;
+
+	/**
+	 * returns the file imported by the import menu item. The source is
+	 * AliFlashcard/spanish.txt, or AliFlashcard/spanish.csv if there is no text
+	 * file. The converted AliFlashcard/spanish.deck is used instead if it is
+	 * at least as new as the source (or there is no source), so a stale deck
+	 * never shadows an edited source.
+	 */
+	public static File getDefaultImportFile() {
+		File dir = new File(AppConfig._importDir);
+		File file = new File(dir, "spanish.txt");
+		if (!file.exists()) {
+			File csvFile = new File(dir, "spanish.csv");
+			if (csvFile.exists())
+				file = csvFile;
+		}
+		File deckFile = new File(dir, "spanish.deck");
+		if (deckFile.exists()
+				&& (!file.exists() || deckFile.lastModified() >= file
+						.lastModified()))
+			return deckFile;
+		return file;
+	}
+
+	/**
+	 * open an import source for the given file. Text files of at least
+	 * {@link AppConfig#_parallelParseMinSize} bytes are parsed in parallel on
+	 * devices with more than one core.
+	 *
+	 * @throws ImportFileParser.ParserError
+	 *             if the file does not exist or can not be opened, or if it
+	 *             is a binary deck.
+	 */
+	public static ImportSource open(File file) {
+		return open(file, 0, 0);
+	}
+
+	/**
+	 * open an import source that continues an earlier import of the given
+	 * file at a position returned by {@link ImportSource#getResumeOffset()}
+	 * and {@link ImportSource#getResumeLine()}.
+	 *
+	 * @throws ImportFileParser.ParserError
+	 *             if the file does not exist or can not be opened, or if it
+	 *             is a binary deck.
+	 */
+	public static ImportSource open(File file, long offset, int line) {
+		int format = getFormat(file);
+		if (format == FORMAT_DECK) {
+			throw new ImportFileParser.ParserError("Deck file can not be parsed",
+					file.toString(), 0, null);
+		}
+		if (format == FORMAT_CSV) {
+			return new CsvImportParser(file, offset, line);
+		}
+		if (file.exists()
+				&& file.length() - offset >= AppConfig._parallelParseMinSize
+				&& Runtime.getRuntime().availableProcessors() > 1) {
+			return new ParallelImportParser(file, offset, line);
+		}
+		return new ImportFileParser(file, offset, file.length(), line);
+	}
+
+	/**
+	 * returns the format of the given file, based on its extension or its
+	 * first line.
+	 */
+	static int getFormat(File file) {
+		String name = file.getName().toLowerCase();
+		if (name.endsWith(".txt"))
+			return FORMAT_TEXT;
+		if (name.endsWith(".csv"))
+			return FORMAT_CSV;
+		if (name.endsWith(".deck") || DeckFile.isDeckFile(file))
+			return FORMAT_DECK;
+		return sniffFormat(file);
+	}
+
+	private static int sniffFormat(File file) {
+		byte[] buf = new byte[SNIFF_SIZE];
+		int len = 0;
+		try {
+			FileInputStream in = new FileInputStream(file);
+			try {
+				int n;
+				while (len < buf.length
+						&& (n = in.read(buf, len, buf.length - len)) > 0) {
+					len += n;
+				}
+			} finally {
+				in.close();
+			}
+		} catch (IOException e) {
+			// let the text parser report the error.
+			return FORMAT_TEXT;
+		}
+
+		int pos = 0;
+		// skip the byte order mark and any leading empty lines.
+		if (len >= 3 && (buf[0] & 0xff) == 0xEF && (buf[1] & 0xff) == 0xBB
+				&& (buf[2] & 0xff) == 0xBF) {
+			pos = 3;
+		}
+		while (pos < len && (buf[pos] == '\n' || buf[pos] == '\r')) {
+			++pos;
+		}
+		if (pos == len || buf[pos] == '#')
+			return FORMAT_TEXT;
+		if (pos + 1 < len) {
+			byte b0 = buf[pos];
+			byte b1 = buf[pos + 1];
+			if ((b1 == '=' && (b0 == 's' || b0 == 'e' || b0 == '='))
+					|| (b0 == '-' && b1 == '-'))
+				return FORMAT_TEXT;
+		}
+		return FORMAT_CSV;
+	}
+}
@@ -10,8 +10,8 @@ public class LP {
 	
 	// if true, log standard android lifecycle events.
 	public final static boolean LOG_LIFECYCLE_EVENTS = true;
-	
-	// if true, log messages being dispatched to app components.
-	public final static boolean LOG_MESSAGE_EVENTS = true;
+
+	// messages dispatched to app components are not logged, they are
+	// recorded in the Trace (see AppConfig._trace).
 
 }
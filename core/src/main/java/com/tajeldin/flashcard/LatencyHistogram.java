@@ -0,0 +1,107 @@
+package com.tajeldin.flashcard;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * A histogram of latencies in microseconds. Values below 8us get a bucket
+ * each, larger values are counted in log scale buckets with 8 buckets per
+ * power of two, so a percentile is within 1/8 of the real value. Values of
+ * 2^41us (25 days) and more all land in the last bucket.
+ * <p>
+ * Recording does not allocate or lock, so it can be done on every message.
+ * Any thread may record and read, a reader may just see a few values of a
+ * record in progress.
+ */
+public class LatencyHistogram {
+
+	private static final int SUB_BUCKET_BITS = 3;
+	private static final int SUB_BUCKETS = 1 << SUB_BUCKET_BITS;
+	private static final int MAX_EXPONENT = 40;
+	private static final int NUM_BUCKETS = (MAX_EXPONENT - SUB_BUCKET_BITS + 2)
+			* SUB_BUCKETS;
+
+	private final AtomicLongArray _counts = new AtomicLongArray(NUM_BUCKETS);
+	private final AtomicLong _count = new AtomicLong();
+	private final AtomicLong _sum = new AtomicLong();
+	private final AtomicLong _max = new AtomicLong();
+
+	/**
+	 * record one latency. Negative values (clock rounding) count as 0.
+	 */
+	public void record(long micros) {
+		if (micros < 0)
+			micros = 0;
+		_counts.incrementAndGet(getBucket(micros));
+		_count.incrementAndGet();
+		_sum.addAndGet(micros);
+		long max;
+		while (micros > (max = _max.get())) {
+			if (_max.compareAndSet(max, micros))
+				break;
+		}
+	}
+
+	private static int getBucket(long micros) {
+		if (micros < SUB_BUCKETS)
+			return (int) micros;
+		int exponent = 63 - Long.numberOfLeadingZeros(micros);
+		if (exponent > MAX_EXPONENT)
+			return NUM_BUCKETS - 1;
+		int subBucket = (int) (micros >>> (exponent - SUB_BUCKET_BITS))
+				& (SUB_BUCKETS - 1);
+		return (exponent - SUB_BUCKET_BITS + 1) * SUB_BUCKETS + subBucket;
+	}
+
+	/**
+	 * returns the largest value that falls in the given bucket.
+	 */
+	private static long getBucketLimit(int bucket) {
+		if (bucket < SUB_BUCKETS)
+			return bucket;
+		int shift = bucket / SUB_BUCKETS - 1;
+		long start = (long) (SUB_BUCKETS + bucket % SUB_BUCKETS) << shift;
+		return start + (1L << shift) - 1;
+	}
+
+	public long getCount() {
+		return _count.get();
+	}
+
+	public long getMax() {
+		return _max.get();
+	}
+
+	public long getMean() {
+		long count = _count.get();
+		return (count == 0) ? 0 : _sum.get() / count;
+	}
+
+	/**
+	 * returns the value (us) that the given percent of the latencies are at or
+	 * below, or 0 if nothing was recorded.
+	 */
+	public long getPercentile(double percent) {
+		long count = _count.get();
+		if (count == 0)
+			return 0;
+		long target = Math.max(1, (long) Math.ceil(count * percent / 100));
+		long seen = 0;
+		for (int i = 0; i < NUM_BUCKETS; ++i) {
+			seen += _counts.get(i);
+			if (seen >= target)
+				return Math.min(getBucketLimit(i), getMax());
+		}
+		return getMax();
+	}
+
+	/**
+	 * returns "count mean p50 p90 p99 max", latencies in us.
+	 */
+	@Override
+	public String toString() {
+		return getCount() + " " + getMean() + " " + getPercentile(50) + " "
+				+ getPercentile(90) + " " + getPercentile(99) + " "
+				+ getMax();
+	}
+}
@@ -0,0 +1,59 @@
+package com.tajeldin.flashcard;
+
+/**
+ * Logging shim for the core classes, so they do not depend on android.util.Log.
+ * By default messages are printed to stderr. The app installs a logger that
+ * writes to the Android log (see {@link #setLogger(Logger)}).
+ * <p>
+ * The level values are the same as the Android log priorities.
+ */
+public abstract class Logger {
+
+	public static final int VERBOSE = 2;
+	public static final int DEBUG = 3;
+	public static final int INFO = 4;
+	public static final int WARN = 5;
+	public static final int ERROR = 6;
+
+	private static final String[] LEVEL_NAMES = { "", "", "V", "D", "I", "W",
+			"E" };
+
+	private static volatile Logger _logger = new Logger() {
+		@Override
+		protected void log(int level, String tag, String msg) {
+			System.err.println(LEVEL_NAMES[level] + "/" + tag + ": " + msg);
+		}
+	};
+
+	/**
+	 * replace the logger used by all static log methods.
+	 */
+	public static void setLogger(Logger logger) {
+		_logger = logger;
+	}
+
+	public static void v(String tag, String msg) {
+		_logger.log(VERBOSE, tag, msg);
+	}
+
+	public static void d(String tag, String msg) {
+		_logger.log(DEBUG, tag, msg);
+	}
+
+	public static void i(String tag, String msg) {
+		_logger.log(INFO, tag, msg);
+	}
+
+	public static void w(String tag, String msg) {
+		_logger.log(WARN, tag, msg);
+	}
+
+	public static void e(String tag, String msg) {
+		_logger.log(ERROR, tag, msg);
+	}
+
+	/**
+	 * write a single log message at the given level.
+	 */
+	protected abstract void log(int level, String tag, String msg);
+}
@@ -0,0 +1,65 @@
+package com.tajeldin.flashcard;
+
+/**
+ * Runs the message loops of the app components. Each component (controller,
+ * db, ...) is a {@link Receiver} with its own thread, started with
+ * {@link #startEndpoint(String, Receiver)}. Other components send it messages
+ * through the returned {@link Endpoint}, usually by way of the
+ * {@link MsgDispatcher}.
+ * <p>
+ * Messages are handled one at a time, in order of their target time and in
+ * FIFO order for the same target time, just like an Android looper. On a
+ * device the bus is backed by HandlerThreads. {@link ExecutorMessageBus} runs
+ * the same components on a plain JVM.
+ */
+public interface MessageBus {
+
+	/**
+	 * a component that handles the messages sent to its endpoint. Called on
+	 * the thread of the endpoint only, through
+	 * {@link MsgDispatcher#dispatch(Receiver, BusMessage, long)}.
+	 */
+	public interface Receiver {
+		/**
+		 * handle a message. Returns false if the message type is unknown.
+		 */
+		boolean handleMessage(BusMessage msg);
+	}
+
+	/**
+	 * the sending side of a component. All methods may be called from any
+	 * thread.
+	 */
+	public interface Endpoint {
+		/**
+		 * queue a message with a target time of now minus the given boost.
+		 * Returns false if the message could not be queued.
+		 */
+		boolean send(int what, int arg1, int arg2, Object obj, long boostMillis);
+
+		/**
+		 * queue a message with the given boost once the delay has passed.
+		 * Until then, the message is not in the queue.
+		 */
+		boolean sendDelayed(int what, int arg1, int arg2, Object obj,
+				long delayMillis, long boostMillis);
+
+		/**
+		 * remove all queued messages of the given type. Delayed messages that
+		 * are not due yet are not removed.
+		 */
+		void removeMessages(int what);
+	}
+
+	/**
+	 * start a new thread with the given name that hands the messages sent to
+	 * the returned endpoint to the receiver.
+	 */
+	Endpoint startEndpoint(String name, Receiver receiver);
+
+	/**
+	 * returns the current time (ms) on the clock used for message target
+	 * times.
+	 */
+	long uptimeMillis();
+}
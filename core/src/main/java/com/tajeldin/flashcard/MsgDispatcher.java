@@ -0,0 +1,172 @@
+package com.tajeldin.flashcard;
+
+/**
+ * Message dispatcher for sending messages to the three main components of the
+ * application (UI, controller, db) and the db reader threads. Each component
+ * registers the {@link MessageBus.Endpoint} its messages are sent to. The
+ * setXEndpoint/sendMessageToX methods are synchronized due to java memory
+ * model constraints rather than a real need for mutual exclusion. This should
+ * not prove to be a problem in practice.
+ * <p>
+ * Messages are queued by priority class ({@link MsgType#getPriority(int)}).
+ * The message loop of a component handles messages in order of their target
+ * time, so a message is sent with a target time that is moved into the past
+ * by the boost of its class. A new interactive message thus goes ahead of all
+ * queued bulk messages that were sent less than
+ * {@link #INTERACTIVE_BOOST_MS} ago. Messages of the same class stay in FIFO
+ * order, and a message that waited longer than the boost difference is
+ * handled before newer messages of a higher class, so nothing starves.
+ */
+public class MsgDispatcher {
+
+	/** how far (ms) the messages of each priority class are moved ahead. */
+	static final long INTERACTIVE_BOOST_MS = 2000;
+	static final long BACKGROUND_BOOST_MS = 500;
+	static final long BULK_BOOST_MS = 0;
+
+	// the three message endpoints to send messages to.
+	private static MessageBus.Endpoint _uiEndpoint;
+	private static MessageBus.Endpoint _controllerEndpoint;
+	private static MessageBus.Endpoint _dbEndpoint;
+
+	// the db reader threads, null if queries are handled by the db itself.
+	private static MessageBus.Endpoint[] _dbReaderEndpoints;
+
+	public static synchronized void setUiEndpoint(MessageBus.Endpoint e) {
+		_uiEndpoint = e;
+	}
+
+	public static synchronized void setControllerEndpoint(MessageBus.Endpoint e) {
+		_controllerEndpoint = e;
+	}
+
+	public static synchronized void setDbEndpoint(MessageBus.Endpoint e) {
+		_dbEndpoint = e;
+	}
+
+	public static synchronized void setDbReaderEndpoints(MessageBus.Endpoint[] e) {
+		_dbReaderEndpoints = e;
+	}
+
+	public static synchronized boolean sendMessageToUI(int w, int a1, int a2,
+			Object o) {
+		return sendMessageToEndpoint(_uiEndpoint, w, a1, a2, o);
+	}
+
+	public static synchronized boolean sendMessageToController(int w, int a1,
+			int a2, Object o) {
+		return sendMessageToEndpoint(_controllerEndpoint, w, a1, a2, o);
+	}
+
+	public static synchronized boolean sendMessageToDB(int w, int a1, int a2,
+			Object o) {
+		return sendMessageToEndpoint(_dbEndpoint, w, a1, a2, o);
+	}
+
+	/**
+	 * send a read only message to one of the db reader threads. The reader is
+	 * picked by a1 (the level of a query), so messages with the same a1 are
+	 * handled in order. If there are no readers (no WAL mode), the message is
+	 * sent to the db.
+	 */
+	public static synchronized boolean sendMessageToDbReader(int w, int a1,
+			int a2, Object o) {
+		if (_dbReaderEndpoints == null) {
+			return sendMessageToEndpoint(_dbEndpoint, w, a1, a2, o);
+		}
+		MessageBus.Endpoint e = _dbReaderEndpoints[Math.abs(a1)
+				% _dbReaderEndpoints.length];
+		return sendMessageToEndpoint(e, w, a1, a2, o);
+	}
+
+	/**
+	 * send a message without args to the controller, replacing any message of
+	 * the same type that is still waiting in the controller queue. Used for
+	 * requests where only the latest one matters.
+	 */
+	public static synchronized boolean sendUniqueMessageToController(int w) {
+		if (_controllerEndpoint != null) {
+			_controllerEndpoint.removeMessages(w);
+		}
+		return sendMessageToEndpoint(_controllerEndpoint, w, 0, 0, null);
+	}
+
+	/**
+	 * send a message to the db that will be handled after the given delay.
+	 */
+	public static synchronized boolean sendDelayedMessageToDB(int w,
+			long delayMillis) {
+		return sendDelayedMessageToDB(w, 0, 0, null, delayMillis);
+	}
+
+	/**
+	 * send a message with args to the db that will be handled after the given
+	 * delay.
+	 */
+	public static synchronized boolean sendDelayedMessageToDB(int w, int a1,
+			int a2, Object o, long delayMillis) {
+		if (_dbEndpoint != null) {
+			return _dbEndpoint.sendDelayed(w, a1, a2, o, delayMillis,
+					getPriorityBoost(w));
+		} else {
+			return false;
+		}
+	}
+
+	/**
+	 * returns how far (ms) messages of the given type are moved ahead of
+	 * messages sent at the same time by a lower priority class.
+	 */
+	public static long getPriorityBoost(int w) {
+		switch (MsgType.getPriority(w)) {
+		case MsgType.PRIORITY_INTERACTIVE:
+			return INTERACTIVE_BOOST_MS;
+		case MsgType.PRIORITY_BACKGROUND:
+			return BACKGROUND_BOOST_MS;
+		default:
+			return BULK_BOOST_MS;
+		}
+	}
+
+	/**
+	 * hand a message to its receiver. Called by the message bus on the thread
+	 * of the receiver. The start and end of the message are recorded in the
+	 * {@link Trace}. If {@link AppConfig#_latencyStats} is set, the queue wait
+	 * and service time of the message are recorded in {@link MsgStats}. The
+	 * send time of a message is its target time plus the boost of its type (a
+	 * delayed message is sent once it is due).
+	 *
+	 * @param uptimeMillis
+	 *            current time on the clock of the bus.
+	 */
+	public static boolean dispatch(MessageBus.Receiver receiver,
+			BusMessage msg, long uptimeMillis) {
+		int w = msg.what;
+		Trace.event(Trace.MSG_BEGIN, w, msg.arg1, msg.arg2);
+		if (!AppConfig._latencyStats) {
+			try {
+				return receiver.handleMessage(msg);
+			} finally {
+				Trace.event(Trace.MSG_END, w);
+			}
+		}
+
+		long queueWait = uptimeMillis - (msg.when + getPriorityBoost(w));
+		long start = System.nanoTime();
+		try {
+			return receiver.handleMessage(msg);
+		} finally {
+			MsgStats.recordMessage(w, queueWait, System.nanoTime() - start);
+			Trace.event(Trace.MSG_END, w);
+		}
+	}
+
+	private static boolean sendMessageToEndpoint(MessageBus.Endpoint e, int w,
+			int a1, int a2, Object o) {
+		if (e != null) {
+			return e.send(w, a1, a2, o, getPriorityBoost(w));
+		} else {
+			return false;
+		}
+	}
+}
@@ -0,0 +1,165 @@
+package com.tajeldin.flashcard;
+
+import java.io.File;
+import java.io.FileWriter;
+import java.io.IOException;
+import java.io.PrintWriter;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+
+/**
+ * Latency statistics of the message pipeline. For each message type there
+ * is a histogram of the queue wait (from the time the message was sent, or
+ * became due for a delayed message, until its handler was called) and one of
+ * the service time (time spent in the handler). The messages are timed by
+ * {@link MsgDispatcher#dispatch(MessageBus.Receiver, BusMessage, long)}.
+ * <p>
+ * The card latency seen by the user is kept in a separate histogram: from
+ * the fling that asks for the next card until the card is on the screen.
+ * The time to first card is the time from the start of the app until its
+ * first card is on the screen.
+ * <p>
+ * All latencies are in microseconds. The queue wait comes from the looper
+ * clock, so it only has a resolution of 1ms.
+ */
+public class MsgStats {
+
+	// message types are below this value.
+	private static final int MAX_MSG_TYPES = 512;
+
+	private static final AtomicReferenceArray<LatencyHistogram> _queueWait = new AtomicReferenceArray<LatencyHistogram>(
+			MAX_MSG_TYPES);
+	private static final AtomicReferenceArray<LatencyHistogram> _serviceTime = new AtomicReferenceArray<LatencyHistogram>(
+			MAX_MSG_TYPES);
+	private static final LatencyHistogram _cardLatency = new LatencyHistogram();
+
+	// time (ns) of the fling waiting for its card, 0 if none. UI thread only.
+	private static long _flingStart = 0;
+
+	// time (ns) the app started, 0 once its first card is shown. UI thread
+	// only.
+	private static long _appStart = 0;
+
+	// time (us) from app start to the first card, -1 until it is shown.
+	private static volatile long _timeToFirstCard = -1;
+
+	/**
+	 * record the queue wait (ms) and service time (ns) of a handled message.
+	 */
+	static void recordMessage(int msgType, long queueWaitMillis,
+			long serviceNanos) {
+		if (msgType < 0 || msgType >= MAX_MSG_TYPES)
+			return;
+		// the service histogram is created first, so a type with a queue
+		// wait histogram always has both.
+		LatencyHistogram service = getHistogram(_serviceTime, msgType);
+		getHistogram(_queueWait, msgType).record(queueWaitMillis * 1000);
+		service.record(serviceNanos / 1000);
+	}
+
+	private static LatencyHistogram getHistogram(
+			AtomicReferenceArray<LatencyHistogram> histograms, int msgType) {
+		LatencyHistogram h = histograms.get(msgType);
+		if (h == null) {
+			histograms.compareAndSet(msgType, null, new LatencyHistogram());
+			h = histograms.get(msgType);
+		}
+		return h;
+	}
+
+	/**
+	 * returns the queue wait histogram of the given message type, null if no
+	 * message of that type was handled yet.
+	 */
+	public static LatencyHistogram getQueueWait(int msgType) {
+		return _queueWait.get(msgType);
+	}
+
+	/**
+	 * returns the service time histogram of the given message type, null if
+	 * no message of that type was handled yet.
+	 */
+	public static LatencyHistogram getServiceTime(int msgType) {
+		return _serviceTime.get(msgType);
+	}
+
+	/**
+	 * returns the histogram of the time from a fling to the display of the
+	 * next card.
+	 */
+	public static LatencyHistogram getCardLatency() {
+		return _cardLatency;
+	}
+
+	/**
+	 * called by the UI when a fling asks for the next card.
+	 */
+	public static void startCardRequest() {
+		_flingStart = System.nanoTime();
+	}
+
+	/**
+	 * called by the UI once a new card is displayed. Records the card latency
+	 * if a fling was waiting for it.
+	 */
+	public static void finishCardRequest() {
+		if (_flingStart != 0) {
+			_cardLatency.record((System.nanoTime() - _flingStart) / 1000);
+			_flingStart = 0;
+		}
+	}
+
+	/**
+	 * called by the app when it is created.
+	 */
+	public static void startApp() {
+		_appStart = System.nanoTime();
+	}
+
+	/**
+	 * called by the UI whenever it shows a card. Records the time to first
+	 * card the first time.
+	 */
+	public static void cardShown() {
+		if (_appStart != 0) {
+			_timeToFirstCard = (System.nanoTime() - _appStart) / 1000;
+			_appStart = 0;
+		}
+	}
+
+	/**
+	 * returns the time (us) from the start of the app to its first card, -1
+	 * if no card was shown yet.
+	 */
+	public static long getTimeToFirstCard() {
+		return _timeToFirstCard;
+	}
+
+	/**
+	 * write all histograms as text, one line per histogram.
+	 */
+	public static void dump(PrintWriter out) {
+		out.println("# latencies in us: name count mean p50 p90 p99 max");
+		out.println("first_card " + _timeToFirstCard);
+		out.println("card " + _cardLatency);
+		for (int i = 0; i < MAX_MSG_TYPES; ++i) {
+			LatencyHistogram wait = _queueWait.get(i);
+			if (wait != null) {
+				String name = MsgType.getMsgName(i);
+				out.println("wait." + name + " " + wait);
+				out.println("service." + name + " " + _serviceTime.get(i));
+			}
+		}
+	}
+
+	/**
+	 * write all histograms to the given file.
+	 */
+	public static void dumpToFile(File file) throws IOException {
+		PrintWriter out = new PrintWriter(new FileWriter(file));
+		try {
+			dump(out);
+		} finally {
+			out.close();
+		}
+	}
+}
@@ -0,0 +1,382 @@
+package com.tajeldin.flashcard;
+
+/**
+ * class to encapsulate all known message types being communicated between
+ * application components.
+ * <p>
+ * Every message type belongs to a priority class (see
+ * {@link #getPriority(int)}). The {@link MsgDispatcher} uses the class to
+ * order the messages waiting in a component queue.
+ */
+public class MsgType {
+
+	/**
+	 * priority class of messages that a user is waiting for (showing the next
+	 * card, recording a guess).
+	 */
+	public static final int PRIORITY_INTERACTIVE = 0;
+
+	/**
+	 * priority class of short background work (state writes, import control
+	 * and progress messages).
+	 */
+	public static final int PRIORITY_BACKGROUND = 1;
+
+	/**
+	 * priority class of bulk work (import batches). Bulk handlers must do a
+	 * bounded amount of work per message and post themselves again to
+	 * continue, so that other messages get in between.
+	 */
+	public static final int PRIORITY_BULK = 2;
+
+	/**
+	 * message sent from UI to controller to tell it to send back the next FC.
+	 * Sent with {@link MsgDispatcher#sendUniqueMessageToController(int)} so
+	 * that a burst of requests is collapsed into one.
+	 * <ul>
+	 * <li>NO_ARGS.
+	 */
+	public static final int MSG_GET_NEXT_FC = 100;
+
+	/**
+	 * message sent from UI to controller to update results of FC.
+	 * <ul>
+	 * <li>arg1 = 1 if correct guess, 0 for wrong guess.
+	 * <li>obj = flashcard object to update (ownership passed to controller).
+	 */
+	public static final int MSG_FC_GUESS_RESULT = 101;
+
+	/**
+	 * message sent from UI to controller to handle import menu item.
+	 * <ul>
+	 * <li>NO_ARGS.
+	 */
+	public static final int MSG_MENU_IMPORT = 200;
+
+	/**
+	 * message sent from db to controller to telling it to continue with current
+	 * import operation (i.e. send more flashcard sets to db).
+	 * <ul>
+	 * <li>NO_ARGS.
+	 */
+	public static final int MSG_CONTINUE_IMPORT = 201;
+
+	/**
+	 * message sent from db to controller when the db was opened with an import
+	 * that was interrupted (e.g. the app was killed). The controller continues
+	 * the import where it stopped.
+	 * <ul>
+	 * <li>obj = ImportCheckpoint of the interrupted import.
+	 */
+	public static final int MSG_RESUME_IMPORT = 202;
+
+	/**
+	 * message sent from UI to controller to write the latency statistics
+	 * ({@link MsgStats}) and the {@link Trace} to a file.
+	 * <ul>
+	 * <li>NO_ARGS.
+	 */
+	public static final int MSG_MENU_DUMP_STATS = 203;
+
+	/**
+	 * message sent from UI to controller to save the review position. The
+	 * controller adds the prefetch positions, writes the {@link CardSnapshot}
+	 * that the next start of the app shows its first card from, and passes
+	 * the session on to the db.
+	 * <ul>
+	 * <li>obj = {@link SessionState} with a copy of the FC on screen
+	 * (ownership passed to controller).
+	 */
+	public static final int MSG_SAVE_SESSION = 204;
+
+	/**
+	 * message sent from the app to controller once all components are
+	 * started. The controller loads the saved session from the db and then
+	 * fills the prefetch queue of the current level before the first card is
+	 * asked for.
+	 * <ul>
+	 * <li>NO_ARGS.
+	 */
+	public static final int MSG_WARM_PREFETCH = 205;
+
+	/**
+	 * message sent from db to controller with the session loaded by
+	 * {@link #MSG_DB_LOAD_SESSION}.
+	 * <ul>
+	 * <li>obj = {@link SessionState} with its cards, or null if none was
+	 * saved (ownership passed to controller).
+	 */
+	public static final int MSG_RESTORE_SESSION = 206;
+
+	/**
+	 * message sent from db to controller once an import is finished.
+	 * <ul>
+	 * <li>arg1 = 1 if cards were replaced, removed or changed (a full import,
+	 * or a diff import that deleted or updated cards), so queued cards may be
+	 * stale. 0 otherwise.
+	 */
+	public static final int MSG_IMPORT_FINISHED = 207;
+
+	/**
+	 * message sent from controller to db to tell it to prepare for impending
+	 * import operation.
+	 * <ul>
+	 * <li>obj = ImportCheckpoint of the import file. Its isResume flag is set
+	 * if an interrupted import is continued.
+	 */
+	public static final int MSG_DB_START_IMPORT = 300;
+
+	/**
+	 * message sent from controller to db to insert the given FC chain into
+	 * database.
+	 * <ul>
+	 * <li>obj = ImportPipeline.Batch to insert (ownership passed to db).
+	 */
+	public static final int MSG_INSERT_FC_SET = 301;
+
+	/**
+	 * message sent from controller (PrefetchQueue) to db to query for the next
+	 * set of flashcards. Handled by a db reader thread if there is one, see
+	 * {@link MsgDispatcher#sendMessageToDbReader(int, int, int, Object)}.
+	 * <ul>
+	 * <li>arg1 = level to query for.
+	 * <li>arg2 = next id to query for.
+	 * <li>obj = QueryResult with the request (level, minId and limit), filled
+	 * in and sent back with {@link #MSG_RESULT_FC_SET}.
+	 */
+	public static final int MSG_QUERY_FC_SET = 302;
+
+	/**
+	 * message sent from db to controller in response to a query request.
+	 * <ul>
+	 * <li>obj = QueryResult instance of the request containing the result of
+	 * the query.
+	 */
+	public static final int MSG_RESULT_FC_SET = 303;
+
+	/**
+	 * message sent from controller to db to update the given FC in the
+	 * database.
+	 * <ul>
+	 * <li>arg1 = update sequence number, see {@link QueryResult#updateSeq}.
+	 * <li>obj = FC to be updated. ownership of FC is transfered to DB.
+	 * </ul>
+	 * The update is buffered by the db and written later (see
+	 * {@link #MSG_DB_FLUSH_STATE}).
+	 */
+	public static final int MSG_UPDATE_FC = 304;
+
+	/**
+	 * message sent from controller to db to notify db that the import operation
+	 * has completed.
+	 * <ul>
+	 * <li>NO_ARGS.
+	 */
+	public static final int MSG_DB_FINISH_IMPORT = 305;
+
+	/**
+	 * message sent from controller to db to insert the flashcards produced by
+	 * a pipelined import. The db sends this message to itself again after each
+	 * transaction until the import is done.
+	 * <ul>
+	 * <li>obj = ImportPipeline to drain.
+	 */
+	public static final int MSG_DB_DRAIN_IMPORT = 308;
+
+	/**
+	 * message sent from controller to db to bulk load a binary deck file. The
+	 * db sends this message to itself again after each transaction until all
+	 * cards are loaded.
+	 * <ul>
+	 * <li>obj = DeckFile.Reader of the deck.
+	 */
+	public static final int MSG_DB_IMPORT_DECK = 309;
+
+	/**
+	 * message sent to db to write out all buffered flashcard state changes.
+	 * Sent by the db to itself when the oldest buffered change is due and by
+	 * the UI when the app is paused.
+	 * <ul>
+	 * <li>NO_ARGS.
+	 */
+	public static final int MSG_DB_FLUSH_STATE = 307;
+
+	/**
+	 * message sent from db to itself to migrate the next chunk of card state
+	 * from the old text keyed state table.
+	 * <ul>
+	 * <li>NO_ARGS.
+	 */
+	public static final int MSG_DB_MIGRATE_STATE = 306;
+
+	/**
+	 * message sent from controller to db to journal the review position. It
+	 * is written in the same transaction as the buffered card state.
+	 * <ul>
+	 * <li>obj = {@link SessionState} (ownership passed to db).
+	 */
+	public static final int MSG_DB_SAVE_SESSION = 310;
+
+	/**
+	 * message sent from controller to db to load the journaled review
+	 * position, answered with {@link #MSG_RESTORE_SESSION}.
+	 * <ul>
+	 * <li>NO_ARGS.
+	 */
+	public static final int MSG_DB_LOAD_SESSION = 311;
+
+	/**
+	 * message sent from controller to db to drop the checkpoint of an
+	 * interrupted import that can not be continued.
+	 * <ul>
+	 * <li>NO_ARGS.
+	 */
+	public static final int MSG_DB_ABORT_IMPORT = 312;
+
+	/**
+	 * message sent from controller to UI to inform it to start the progress
+	 * activity.
+	 * <ul>
+	 * <li>NO_ARGS.
+	 */
+	public static final int MSG_LAUNCH_PROGRESS_ACTIVITY = 400;
+
+	/**
+	 * message sent from controller to UI to update the progress activity. The
+	 * actual progress value is stored in the static ProgressActiviyState class.
+	 * <ul>
+	 * <li>NO_ARGS.
+	 */
+	public static final int MSG_UPDATE_PROGRESS = 401;
+
+	/**
+	 * message sent from UI to controller when the progress activity has
+	 * finished initializing.
+	 * <ul>
+	 * <li>NO_ARGS.
+	 */
+	public static final int MSG_PROGRESS_ACTIVITY_STARTED = 402;
+
+	/**
+	 * message sent from controller to ui to tell it to display the given FC to
+	 * the user.
+	 * <ul>
+	 * <li>obj = FC to be displayed.
+	 */
+	public static final int MSG_DISPLAY_FC = 403;
+
+	/**
+	 * message sent from anyone to ui to display an error message and log it.
+	 * <ul>
+	 * <li>obj = string error message to be displayed and logged.
+	 */
+	public static final int MSG_SHOW_ERROR_MSG = 404;
+
+	/**
+	 * message sent from controller to ui to restore the card on screen, the
+	 * previous card and how much of the card is shown from the saved session.
+	 * <ul>
+	 * <li>obj = {@link SessionState} with its cards (ownership passed to ui).
+	 */
+	public static final int MSG_RESTORE_DISPLAY = 405;
+
+	/**
+	 * returns the priority class of the given message type. Guess results and
+	 * card updates are interactive as they only buffer state and must stay
+	 * ahead of the queries for the next cards.
+	 */
+	public static int getPriority(int msgType) {
+		switch (msgType) {
+		case MSG_GET_NEXT_FC:
+		case MSG_FC_GUESS_RESULT:
+		case MSG_QUERY_FC_SET:
+		case MSG_RESULT_FC_SET:
+		case MSG_UPDATE_FC:
+		case MSG_DISPLAY_FC:
+			return PRIORITY_INTERACTIVE;
+
+		case MSG_CONTINUE_IMPORT:
+		case MSG_INSERT_FC_SET:
+		case MSG_DB_DRAIN_IMPORT:
+		case MSG_DB_IMPORT_DECK:
+			return PRIORITY_BULK;
+
+		default:
+			return PRIORITY_BACKGROUND;
+		}
+	}
+
+	/**
+	 * convert internal message number to message name. Mostly used for
+	 * logging/debugging purposes.
+	 */
+	public static String getMsgName(int msgType) {
+		switch (msgType) {
+
+		case MSG_GET_NEXT_FC:
+			return "MSG_GET_NEXT_FC";
+		case MSG_FC_GUESS_RESULT:
+			return "MSG_FC_GUESS_RESULT";
+
+		case MSG_MENU_IMPORT:
+			return "MSG_MENU_IMPORT";
+		case MSG_CONTINUE_IMPORT:
+			return "MSG_CONTINUE_IMPORT";
+
+		case MSG_RESUME_IMPORT:
+			return "MSG_RESUME_IMPORT";
+		case MSG_MENU_DUMP_STATS:
+			return "MSG_MENU_DUMP_STATS";
+		case MSG_SAVE_SESSION:
+			return "MSG_SAVE_SESSION";
+		case MSG_WARM_PREFETCH:
+			return "MSG_WARM_PREFETCH";
+		case MSG_RESTORE_SESSION:
+			return "MSG_RESTORE_SESSION";
+		case MSG_IMPORT_FINISHED:
+			return "MSG_IMPORT_FINISHED";
+		case MSG_DB_START_IMPORT:
+			return "MSG_DB_START_IMPORT";
+		case MSG_INSERT_FC_SET:
+			return "MSG_INSERT_FC_SET";
+		case MSG_QUERY_FC_SET:
+			return "MSG_QUERY_FC_SET";
+		case MSG_RESULT_FC_SET:
+			return "MSG_RESULT_FC_SET";
+		case MSG_UPDATE_FC:
+			return "MSG_UPDATE_FC";
+		case MSG_DB_FINISH_IMPORT:
+			return "MSG_DB_FINISH_IMPORT";
+		case MSG_DB_MIGRATE_STATE:
+			return "MSG_DB_MIGRATE_STATE";
+		case MSG_DB_SAVE_SESSION:
+			return "MSG_DB_SAVE_SESSION";
+		case MSG_DB_LOAD_SESSION:
+			return "MSG_DB_LOAD_SESSION";
+		case MSG_DB_ABORT_IMPORT:
+			return "MSG_DB_ABORT_IMPORT";
+		case MSG_DB_FLUSH_STATE:
+			return "MSG_DB_FLUSH_STATE";
+		case MSG_DB_DRAIN_IMPORT:
+			return "MSG_DB_DRAIN_IMPORT";
+		case MSG_DB_IMPORT_DECK:
+			return "MSG_DB_IMPORT_DECK";
+
+		case MSG_LAUNCH_PROGRESS_ACTIVITY:
+			return "MSG_LAUNCH_PROGRESS_ACTIVITY";
+		case MSG_UPDATE_PROGRESS:
+			return "MSG_UPDATE_PROGRESS";
+		case MSG_PROGRESS_ACTIVITY_STARTED:
+			return "MSG_PROGRESS_ACTIVITY_STARTED";
+		case MSG_DISPLAY_FC:
+			return "MSG_DISPLAY_FC";
+		case MSG_SHOW_ERROR_MSG:
+			return "MSG_SHOW_ERROR_MSG";
+		case MSG_RESTORE_DISPLAY:
+			return "MSG_RESTORE_DISPLAY";
+
+		default:
+			return "[unknown]";
+		}
+	}
+}
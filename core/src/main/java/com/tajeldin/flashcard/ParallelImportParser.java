@@ -0,0 +1,352 @@
+package com.tajeldin.flashcard;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.ArrayList;
+import java.util.LinkedList;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadFactory;
+
+/**
+ * Parses a large import file on several cores. The file is split into byte
+ * ranges of about {@link AppConfig#_parallelParseChunkSize} bytes. Each range
+ * starts on a "--" or "==" entry separator line, so no entry crosses a range
+ * boundary. Every range is parsed by its own {@link ImportFileParser} on a
+ * fixed thread pool, so comments, validation and error messages are exactly
+ * the same as for a sequential parse.
+ * <p>
+ * The parsed ranges are handed out strictly in file order. Only a small
+ * window of ranges is parsed ahead of the consumer to bound the number of
+ * flashcards in memory. Line numbers in parser errors are counted from the
+ * start of the range, so they are moved by the number of lines in all
+ * earlier ranges before the error is thrown.
+ * <p>
+ * The consumer side of this class is not MT-safe, it should only be used by a
+ * single thread.
+ */
+class ParallelImportParser implements ImportSource {
+
+	private static final int SCAN_BUFFER_SIZE = 8 * 1024;
+
+	/**
+	 * the entries parsed from a single range of the file.
+	 */
+	private static class RangeResult {
+		final Flashcard.Chain chain = new Flashcard.Chain();
+		int lineCount = 0;
+		ImportFileParser.ParserError error = null;
+
+		// file offset and range line count right after each entry.
+		long[] entryOffsets = new long[256];
+		int[] entryLines = new int[256];
+
+		void add(Flashcard fc, long offset, int line) {
+			int i = chain.size();
+			if (i == entryOffsets.length) {
+				long[] offsets = new long[i * 2];
+				System.arraycopy(entryOffsets, 0, offsets, 0, i);
+				entryOffsets = offsets;
+				int[] lines = new int[i * 2];
+				System.arraycopy(entryLines, 0, lines, 0, i);
+				entryLines = lines;
+			}
+			entryOffsets[i] = offset;
+			entryLines[i] = line;
+			chain.append(fc);
+		}
+	}
+
+	/**
+	 * parses all entries in a single range of the file.
+	 */
+	private static class RangeTask implements Callable<RangeResult> {
+		private final File _file;
+		private final long _start;
+		private final long _end;
+
+		RangeTask(File file, long start, long end) {
+			_file = file;
+			_start = start;
+			_end = end;
+		}
+
+		public RangeResult call() {
+			RangeResult result = new RangeResult();
+			ImportFileParser parser = null;
+			try {
+				parser = new ImportFileParser(_file, _start, _end, 0);
+				Flashcard fc;
+				while (!Thread.currentThread().isInterrupted()
+						&& (fc = parser.getNextEntry()) != null) {
+					result.add(fc, parser.getResumeOffset(),
+							parser.getResumeLine());
+				}
+			} catch (ImportFileParser.ParserError e) {
+				result.error = e;
+			} finally {
+				if (parser != null) {
+					result.lineCount = parser.getLineNumber();
+					parser.close();
+				}
+			}
+			return result;
+		}
+	}
+
+	private final File _file;
+	private final long[] _rangeStarts;
+	private final long _fileLength;
+	private final int _window;
+	private ExecutorService _executor;
+	private final LinkedList<Future<RangeResult>> _pending = new LinkedList<Future<RangeResult>>();
+	private int _nextRange = 0;
+
+	// the range being handed out to the consumer.
+	private int _curRange = -1;
+	private RangeResult _curResult = null;
+	private int _curTaken = 0;
+	private int _curCount = 0;
+	private int _lineOffset = 0;
+	private long _bytesDone = 0;
+	private boolean _done = false;
+	private long _resumeOffset = 0;
+	private int _resumeLine = 0;
+
+	ParallelImportParser(File file) {
+		this(file, 0, 0);
+	}
+
+	/**
+	 * create a parser for the entries from the given offset to the end of the
+	 * file. lineOffset is the number of lines before the offset.
+	 */
+	ParallelImportParser(File file, long start, int lineOffset) {
+		_file = file;
+		_fileLength = file.length();
+		_lineOffset = lineOffset;
+		_bytesDone = start;
+		_resumeOffset = start;
+		_resumeLine = lineOffset;
+		try {
+			_rangeStarts = splitFile(file, start,
+					AppConfig._parallelParseChunkSize);
+		} catch (IOException e) {
+			throw new ImportFileParser.ParserError("Unable to open file",
+					file.toString(), 0, e);
+		}
+
+		int numThreads = Math.min(Runtime.getRuntime().availableProcessors(),
+				_rangeStarts.length);
+		_window = numThreads + 1;
+		_executor = Executors.newFixedThreadPool(Math.max(1, numThreads),
+				new ThreadFactory() {
+					private int _count = 0;
+
+					public Thread newThread(final Runnable r) {
+						return new Thread("import-parse-" + (++_count)) {
+							@Override
+							public void run() {
+								setPriority(ImportPipeline.BACKGROUND_PRIORITY);
+								r.run();
+							}
+						};
+					}
+				});
+		submitRanges();
+	}
+
+	/**
+	 * find the start offsets of the ranges the file is split into. The first
+	 * range starts at the given offset, every other range starts at the
+	 * beginning of a "--" or "==" line about chunkSize bytes after the start
+	 * of the range before it.
+	 */
+	static long[] splitFile(File file, long start, int chunkSize)
+			throws IOException {
+		ArrayList<Long> starts = new ArrayList<Long>();
+		starts.add(Long.valueOf(start));
+
+		FileChannel channel = new FileInputStream(file).getChannel();
+		try {
+			long length = channel.size();
+			ByteBuffer buf = ByteBuffer.allocate(SCAN_BUFFER_SIZE);
+			long pos = start + chunkSize;
+			while (pos < length) {
+				long entryStart = findEntryStart(channel, buf, pos, length);
+				if (entryStart < 0)
+					break;
+				starts.add(Long.valueOf(entryStart));
+				pos = entryStart + chunkSize;
+			}
+		} finally {
+			channel.close();
+		}
+
+		long[] result = new long[starts.size()];
+		for (int i = 0; i < result.length; ++i) {
+			result[i] = starts.get(i).longValue();
+		}
+		return result;
+	}
+
+	/**
+	 * returns the offset of the first line at or after pos (pos > 0) that
+	 * starts with "--" or "==", or -1 if there is none.
+	 */
+	private static long findEntryStart(FileChannel channel, ByteBuffer buf,
+			long pos, long length) throws IOException {
+		// look at the byte before pos, so a line starting exactly at pos is
+		// found. prev holds the last two bytes seen.
+		long offset = pos - 1;
+		int prev1 = -1; // byte at offset - 1
+		int prev2 = -1; // byte at offset - 2
+		while (offset < length) {
+			buf.clear();
+			int n = channel.read(buf, offset);
+			if (n <= 0)
+				break;
+			byte[] bytes = buf.array();
+			for (int i = 0; i < n; ++i) {
+				int b = bytes[i];
+				if (prev2 == '\n' && b == prev1 && (b == '-' || b == '=')) {
+					return offset + i - 1;
+				}
+				prev2 = prev1;
+				prev1 = b;
+			}
+			offset += n;
+		}
+		return -1;
+	}
+
+	/**
+	 * keep up to _window ranges parsing ahead of the consumer.
+	 */
+	private void submitRanges() {
+		while (_pending.size() < _window && _nextRange < _rangeStarts.length) {
+			long start = _rangeStarts[_nextRange];
+			long end = (_nextRange + 1 < _rangeStarts.length) ? _rangeStarts[_nextRange + 1]
+					: _fileLength;
+			_pending.add(_executor.submit(new RangeTask(_file, start, end)));
+			++_nextRange;
+		}
+	}
+
+	/**
+	 * move on to the next parsed range, waiting for it if needed. Returns false
+	 * if there are no more ranges.
+	 */
+	private boolean nextRange() {
+		if (_curResult != null) {
+			_lineOffset += _curResult.lineCount;
+			_bytesDone = rangeEnd(_curRange);
+			_curResult = null;
+		}
+		if (_pending.isEmpty())
+			return false;
+
+		Future<RangeResult> future = _pending.removeFirst();
+		++_curRange;
+		submitRanges();
+		try {
+			_curResult = future.get();
+		} catch (InterruptedException e) {
+			close();
+			throw new ImportFileParser.ParserError("Import interrupted",
+					_file.toString(), 0, e);
+		} catch (ExecutionException e) {
+			close();
+			throw new ImportFileParser.ParserError("Error reading import file",
+					_file.toString(), 0, e.getCause());
+		}
+		_curTaken = 0;
+		_curCount = _curResult.chain.size();
+		return true;
+	}
+
+	private long rangeEnd(int range) {
+		return (range + 1 < _rangeStarts.length) ? _rangeStarts[range + 1]
+				: _fileLength;
+	}
+
+	public Flashcard.Chain getNextBatch(int count) {
+		Flashcard.Chain chain = new Flashcard.Chain();
+		while (!_done && chain.size() < count) {
+			if (_curResult == null || _curResult.chain.isEmpty()) {
+				if (_curResult != null && _curResult.error != null) {
+					// entries before the error were handed out, now report it
+					// just like the sequential parser.
+					ImportFileParser.ParserError error = _curResult.error
+							.addLineOffset(_lineOffset);
+					close();
+					throw error;
+				}
+				if (!nextRange()) {
+					_done = true;
+					break;
+				}
+				continue;
+			}
+			chain.append(_curResult.chain.removeFirst());
+			_resumeOffset = _curResult.entryOffsets[_curTaken];
+			_resumeLine = _lineOffset + _curResult.entryLines[_curTaken];
+			++_curTaken;
+		}
+		return chain;
+	}
+
+	public int getCompletedPercentEstimate() {
+		if (_fileLength == 0 || _done)
+			return 100;
+		long bytes = _bytesDone;
+		if (_curResult != null && _curCount > 0) {
+			long start = _rangeStarts[_curRange];
+			bytes = start + (rangeEnd(_curRange) - start) * _curTaken
+					/ _curCount;
+		}
+		return (int) ((bytes * 100) / _fileLength);
+	}
+
+	public long getResumeOffset() {
+		return _resumeOffset;
+	}
+
+	public int getResumeLine() {
+		return _resumeLine;
+	}
+
+	/**
+	 * stop the parser threads and release all parsed flashcards that were not
+	 * handed out.
+	 */
+	public void close() {
+		_done = true;
+		if (_executor == null)
+			return;
+		_executor.shutdownNow();
+		_executor = null;
+
+		if (_curResult != null) {
+			_curResult.chain.releaseAll();
+		}
+		for (Future<RangeResult> future : _pending) {
+			if (future.isDone() && !future.isCancelled()) {
+				try {
+					future.get().chain.releaseAll();
+				} catch (Exception e) {
+					// task failed, nothing to release.
+				}
+			} else {
+				future.cancel(true);
+			}
+		}
+		_pending.clear();
+	}
+}
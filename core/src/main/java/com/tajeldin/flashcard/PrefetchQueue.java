@@ -0,0 +1,225 @@
+package com.tajeldin.flashcard;
+
+/**
+ * An instance of PrefechQueue exists for each supported level. This queue will
+ * store prefetched flashcards from the database in an internal queue. When the
+ * number of queued flashcards drops below the low watermark, the queue asks
+ * the database for the next set, so that it arrives while the user is still
+ * looking at the remaining cards. The low watermark and the size of the set
+ * follow the review pace of the level (see {@link ReviewPace}).
+ * <p>
+ * Only one request is outstanding at a time. Further replenish calls are
+ * collapsed into the outstanding request, and a result that does not match it
+ * (e.g. a late answer to an older request) is discarded.
+ * 
+ * This class is not MT-safe, so it should only be used by a single thread.
+ */
+public class PrefetchQueue {
+
+	private final int _level;
+	private final Flashcard.Chain _queue;
+	private final ReviewPace _pace = new ReviewPace();
+	private int _maxId;
+
+	// the outstanding query and its minId, or null and -1 if there is none.
+	private QueryResult _pendingRequest = null;
+	private int _pendingMinId = -1;
+
+	// sequence number of the last card update sent to the db.
+	private int _updateSeq = 0;
+
+	// number of dequeue calls and how many of them found the queue empty.
+	private int _dequeueCount = 0;
+	private int _missCount = 0;
+
+	public PrefetchQueue(int level) {
+		_level = level;
+		_queue = new Flashcard.Chain();
+		_maxId = 0;
+	}
+
+	/**
+	 * returns the element at the head of the queue. If the queue is empty, a
+	 * null is returned. The queue is replenished if it drops below the low
+	 * watermark.
+	 */
+	public Flashcard dequeue() {
+		Flashcard fc = _queue.removeFirst();
+		++_dequeueCount;
+		if (fc == null) {
+			++_missCount;
+		} else {
+			// only cards handed out count towards the review pace.
+			_pace.recordCard(System.nanoTime());
+		}
+		if (_queue.size() < _pace.getLowWatermark()) {
+			replenishQueue();
+		}
+		return fc;
+	}
+
+	/**
+	 * returns the number of flashcards currently in the queue.
+	 */
+	public int size() {
+		return _queue.size();
+	}
+
+	/**
+	 * returns the first queued flashcard (the rest can be walked with
+	 * {@link Flashcard.Chain#getNext(Flashcard)}), or null if the queue is
+	 * empty. The flashcards stay in the queue.
+	 */
+	public Flashcard getHead() {
+		return _queue.getHead();
+	}
+
+	/**
+	 * returns the id after which the next query continues.
+	 */
+	public int getMaxId() {
+		return _maxId;
+	}
+
+	public int getDequeueCount() {
+		return _dequeueCount;
+	}
+
+	/**
+	 * returns the number of times {@link #dequeue()} found the queue empty, so
+	 * the caller had to wait for the database.
+	 */
+	public int getMissCount() {
+		return _missCount;
+	}
+
+	/**
+	 * enqueue the flashcard set from a database query into this prefetch queue.
+	 * Flashcards that are already in the queue (possible once the query wraps
+	 * around a small level) are released rather than queued twice. The queued
+	 * ids are in keyset order from the head to {@link #getMaxId()}, so that is
+	 * a range check rather than a walk over the queue, and once the result
+	 * runs into the queued range the rest of it is queued as well. Returns
+	 * false, and releases the whole set, if the result is not for the
+	 * outstanding query of this queue.
+	 */
+	public boolean enqueueSet(QueryResult qr) {
+		if (qr != _pendingRequest) {
+			qr.chain.releaseAll();
+			return false;
+		}
+		_pendingRequest = null;
+		_pendingMinId = -1;
+		_pace.recordQuery(System.nanoTime() - qr.requestNanos);
+
+		// TODO: mark this queue as "partial" if qr size < desired size.
+		Flashcard head = _queue.getHead();
+		int headId = (head != null) ? head.getID() : -1;
+		int lastId = _maxId;
+		Flashcard fc;
+		while ((fc = qr.chain.removeFirst()) != null) {
+			if (isQueuedRange(fc.getID(), headId, _maxId)) {
+				fc.release();
+				qr.chain.releaseAll();
+				// continue after the last card queued, not the last one read.
+				_maxId = lastId;
+				return true;
+			}
+			_queue.append(fc);
+			lastId = fc.getID();
+		}
+		_maxId = qr.maxId;
+		return true;
+	}
+
+	/**
+	 * fill the empty queue with the flashcards of a {@link CardSnapshot}, so
+	 * they are served before the database answers its first query. The next
+	 * query continues after maxId.
+	 */
+	public void seed(Flashcard.Chain chain, int maxId) {
+		_queue.appendChain(chain);
+		_maxId = maxId;
+	}
+
+	/**
+	 * returns the id the queue would continue after if it lost its queued
+	 * flashcards, so that none of them is skipped.
+	 */
+	public int getResumeId() {
+		Flashcard head = _queue.getHead();
+		if (head != null)
+			return head.getID() - 1;
+		if (_pendingMinId >= 0)
+			return _pendingMinId - 1;
+		return _maxId;
+	}
+
+	/**
+	 * continue the queries of an empty queue after the given id, as returned
+	 * by {@link #getResumeId()} in an earlier session. No-op if the queue
+	 * already holds flashcards or is waiting for a query.
+	 */
+	public void resumeAt(int maxId) {
+		if (_queue.isEmpty() && _pendingMinId < 0) {
+			_maxId = maxId;
+		}
+	}
+
+	/**
+	 * release all queued flashcards and start over from the beginning of the
+	 * level. The result of an outstanding query is discarded when it arrives.
+	 */
+	public void clear() {
+		_queue.releaseAll();
+		_pendingRequest = null;
+		_pendingMinId = -1;
+		_maxId = 0;
+	}
+
+	/**
+	 * set the sequence number of the last {@link MsgType#MSG_UPDATE_FC} sent
+	 * to the db. Queries carry it, so that a db reader thread waits for the
+	 * db thread to buffer that update before it runs the query.
+	 */
+	public void setUpdateSeq(int updateSeq) {
+		_updateSeq = updateSeq;
+	}
+
+	/**
+	 * returns true if the id is within the keyset range of the queued
+	 * flashcards, from headId (-1 if the queue is empty) to maxId, wrapping
+	 * around the end of the level if headId > maxId. A card that left the
+	 * level and came back within that range is held back until the next
+	 * round, which is harmless.
+	 */
+	private static boolean isQueuedRange(int id, int headId, int maxId) {
+		if (headId < 0)
+			return false;
+		if (headId <= maxId)
+			return id >= headId && id <= maxId;
+		return id >= headId || id <= maxId;
+	}
+
+	/**
+	 * Replenish the data in the queue by querying the database for more
+	 * flashcards, as many as the review pace calls for. This is a no-op if a
+	 * query for this queue is already outstanding.
+	 */
+	public void replenishQueue() {
+		if (_pendingMinId >= 0)
+			return;
+		_pendingMinId = _maxId + 1;
+		QueryResult request = new QueryResult();
+		request.level = _level;
+		request.minId = _pendingMinId;
+		request.limit = _pace.getQuerySize();
+		request.updateSeq = _updateSeq;
+		request.requestNanos = System.nanoTime();
+		_pendingRequest = request;
+		Trace.event(Trace.FC_QUERY, _level, request.minId, request.limit);
+		MsgDispatcher.sendMessageToDbReader(MsgType.MSG_QUERY_FC_SET, _level,
+				_pendingMinId, request);
+	}
+
+}
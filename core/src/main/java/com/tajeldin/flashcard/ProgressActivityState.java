@@ -5,8 +5,9 @@ package com.tajeldin.flashcard;
  * This will help with onCreate/onDestory calls on the activity due to
  * configuration changes.
  * 
- * No need to persist this state on application startup as we never start in
- * the middle of a progress requiring operation (e.g. import or export).
+ * No need to persist this state on application startup. An import that was
+ * interrupted is continued as a new progress operation (see
+ * {@link MsgType#MSG_RESUME_IMPORT}).
  */
 public class ProgressActivityState {
 
@@ -0,0 +1,23 @@
+package com.tajeldin.flashcard;
+
+/**
+ * simple class to hold a db query for a set of flashcards and its result. The
+ * controller fills in the request, the db adds the result and sends it back.
+ * The result {@link #chain} is in the same order as the results returned from
+ * the database.
+ */
+class QueryResult {
+	final Flashcard.Chain chain = new Flashcard.Chain();
+	// id of the last flashcard in the result. Not necessarily the largest id
+	// if the query wrapped around to the beginning of the level.
+	int maxId = 0;
+	int level = 0;
+	// the minId the query was made with. Identifies the request.
+	int minId = 0;
+	// max number of flashcards to query.
+	int limit = 0;
+	// sequence number of the last card update sent before the request.
+	int updateSeq = 0;
+	// time (ns) the request was sent.
+	long requestNanos = 0;
+}
@@ -0,0 +1,107 @@
+package com.tajeldin.flashcard;
+
+/**
+ * Measures how fast the user reviews the cards of a level and how long its
+ * queries take, and sizes the queries of its {@link PrefetchQueue} from that:
+ * <ul>
+ * <li>the low watermark covers the cards reviewed during two query
+ * latencies, so the queue does not run dry while a query is out.
+ * <li>a query fetches the cards reviewed in
+ * {@link AppConfig#_queryRefillMillis}, so a fast reviewer does not pay a
+ * query every few cards and a slow one does not hold cards for minutes.
+ * </ul>
+ * Both are exponential moving averages. Until both are measured, the queue
+ * uses the configured sizes. The low watermark is always below the query size,
+ * so a refill lasts for more than one card.
+ * <p>
+ * This class is not MT-safe, so it should only be used by a single thread.
+ */
+class ReviewPace {
+
+	// weight of a new sample in the moving averages.
+	private static final double ALPHA = 0.2;
+
+	// gaps (ms) between two cards outside of these bounds are not the review
+	// pace: a shorter one is a burst of requests, a longer one a break.
+	private static final double MIN_CARD_INTERVAL_MS = 200;
+	private static final double MAX_CARD_INTERVAL_MS = 60000;
+
+	// number of query latencies the low watermark covers.
+	private static final int LATENCY_MARGIN = 2;
+
+	// time (ns) of the last card request, 0 if none yet.
+	private long _lastCardNanos = 0;
+
+	// moving averages (ms), -1 until the first sample.
+	private double _cardIntervalMs = -1;
+	private double _queryLatencyMs = -1;
+
+	/**
+	 * record that a card of this level was handed out for display.
+	 */
+	void recordCard(long nowNanos) {
+		if (_lastCardNanos != 0) {
+			double interval = (nowNanos - _lastCardNanos) / 1e6;
+			if (interval >= MIN_CARD_INTERVAL_MS
+					&& interval <= MAX_CARD_INTERVAL_MS) {
+				_cardIntervalMs = average(_cardIntervalMs, interval);
+			}
+		}
+		_lastCardNanos = nowNanos;
+	}
+
+	/**
+	 * record the time from sending a query until its result arrived.
+	 */
+	void recordQuery(long latencyNanos) {
+		_queryLatencyMs = average(_queryLatencyMs, latencyNanos / 1e6);
+	}
+
+	private static double average(double avg, double sample) {
+		return (avg < 0) ? sample : avg + ALPHA * (sample - avg);
+	}
+
+	private boolean isMeasured() {
+		return _cardIntervalMs >= 0 && _queryLatencyMs >= 0;
+	}
+
+	/**
+	 * returns the number of queued cards below which the queue is refilled.
+	 * Always less than {@link #getQuerySize()}.
+	 */
+	int getLowWatermark() {
+		if (!isMeasured())
+			return AppConfig._prefetchLowWatermark;
+		int cards = (int) Math.ceil(LATENCY_MARGIN * _queryLatencyMs
+				/ _cardIntervalMs) + 1;
+		return Math.min(cards, AppConfig._maxQuerySetSize - 1);
+	}
+
+	/**
+	 * returns the number of cards to ask for in the next query.
+	 */
+	int getQuerySize() {
+		if (!isMeasured())
+			return AppConfig._initialQuerySetSize;
+		int size = (int) Math.ceil(AppConfig._queryRefillMillis / _cardIntervalMs);
+		// a query must last beyond the cards reviewed while the next one is
+		// out.
+		size = Math.max(size, getLowWatermark() + 1);
+		return Math.max(AppConfig._minQuerySetSize,
+				Math.min(size, AppConfig._maxQuerySetSize));
+	}
+
+	/**
+	 * returns the average time (ms) between two cards, -1 if not known yet.
+	 */
+	double getCardIntervalMillis() {
+		return _cardIntervalMs;
+	}
+
+	/**
+	 * returns the average query latency (ms), -1 if not known yet.
+	 */
+	double getQueryLatencyMillis() {
+		return _queryLatencyMs;
+	}
+}
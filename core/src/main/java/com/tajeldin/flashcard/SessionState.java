@@ -0,0 +1,38 @@
+package com.tajeldin.flashcard;
+
+/**
+ * the review position of the user. It is filled in by the UI and the
+ * controller when the app state is saved, journaled by the db in its next
+ * state transaction, and handed back to the controller and the UI when the
+ * app starts again.
+ */
+class SessionState {
+	// the card on screen and the one before it (0 if none).
+	int currentId = 0;
+	int previousId = 0;
+	// true if both sides of the current card were shown.
+	boolean showEntireCard = false;
+	// the current level and, per level, the id its prefetch queue continues
+	// after.
+	int level = 0;
+	int[] resumeIds = null;
+
+	// the cards themselves: a copy of the current card on save, and both
+	// cards as loaded by the db on restore. null if not available.
+	Flashcard current = null;
+	Flashcard previous = null;
+
+	/**
+	 * release the cards still held by this session.
+	 */
+	void releaseCards() {
+		if (current != null) {
+			current.release();
+			current = null;
+		}
+		if (previous != null) {
+			previous.release();
+			previous = null;
+		}
+	}
+}
@@ -0,0 +1,93 @@
+package com.tajeldin.flashcard;
+
+/**
+ * Generates unique, randomly shuffled flashcard ids without remembering the
+ * ids that were already handed out. The n'th id is the n'th sequence number
+ * run through a keyed permutation of the range [0, 2^30) (a balanced 4 round
+ * Feistel network over two 15 bit halves), plus one. Since the permutation is
+ * a bijection, ids never repeat until 2^30 ids have been generated, and every
+ * id costs the same handful of arithmetic operations with no allocation.
+ * <p>
+ * The state of the generator is just its key and the number of ids generated
+ * so far, so an import can be continued later with the same sequence.
+ * 
+ * This class is not MT-safe, so it should only be used by a single thread.
+ */
+class ShuffleIdGenerator {
+
+	private static final int HALF_BITS = 15;
+	private static final int HALF_MASK = (1 << HALF_BITS) - 1;
+	private static final int ROUNDS = 4;
+
+	/** max number of ids that can be generated by one generator. */
+	static final int MAX_IDS = 1 << (2 * HALF_BITS);
+
+	private final long _key;
+	private final int[] _roundKeys = new int[ROUNDS];
+	private int _count;
+
+	ShuffleIdGenerator(long key) {
+		this(key, 0);
+	}
+
+	/**
+	 * create a generator that continues the sequence of an earlier generator
+	 * with the given key after count ids were generated.
+	 */
+	ShuffleIdGenerator(long key, int count) {
+		_key = key;
+		_count = count;
+		long k = key;
+		for (int i = 0; i < ROUNDS; ++i) {
+			// split the key into round keys with a splitmix64 step.
+			k += 0x9E3779B97F4A7C15L;
+			long z = k;
+			z = (z ^ (z >>> 30)) * 0xBF58476D1CE4E5B9L;
+			z = (z ^ (z >>> 27)) * 0x94D049BB133111EBL;
+			_roundKeys[i] = (int) (z ^ (z >>> 31));
+		}
+	}
+
+	/**
+	 * returns the next id in the range [1, 2^30].
+	 */
+	int next() {
+		if (_count >= MAX_IDS) {
+			throw new IllegalStateException("out of shuffle ids");
+		}
+		return permute(_count++) + 1;
+	}
+
+	long getKey() {
+		return _key;
+	}
+
+	int getCount() {
+		return _count;
+	}
+
+	/**
+	 * the keyed permutation of [0, 2^30).
+	 */
+	private int permute(int value) {
+		int left = value >>> HALF_BITS;
+		int right = value & HALF_MASK;
+		for (int i = 0; i < ROUNDS; ++i) {
+			int tmp = right;
+			right = left ^ round(right, _roundKeys[i]);
+			left = tmp;
+		}
+		return (left << HALF_BITS) | right;
+	}
+
+	/**
+	 * Feistel round function. Does not need to be invertible, just well mixed.
+	 */
+	private static int round(int half, int roundKey) {
+		int x = (half ^ roundKey) * 0x9E3779B1;
+		x ^= x >>> 16;
+		x *= 0x85EBCA6B;
+		x ^= x >>> 13;
+		return x & HALF_MASK;
+	}
+}
@@ -0,0 +1,118 @@
+package com.tajeldin.flashcard;
+
+/**
+ * StringFormatter provides helper functions for transforming the raw strings
+ * from the database into strings suitable for display.
+ * 
+ * The database strings are setup for easy entry. For example, the Spanish
+ * letter N with ~ on top can be entered as "N~" in the database. For instance,
+ * the word for child can be entered as "nin~o" in the database. However, it
+ * will be displayed properly on the screen (with just 4 letters).
+ * 
+ * In addition, this class provides functions for embedding newlines where the
+ * special ";" (semicolon) marker appears.
+ * 
+ * The translation is done in a single pass over the chars using lookup tables.
+ * A string without any markers is returned as is, otherwise the only object
+ * allocated is the resulting string. Each instance keeps its own work buffer,
+ * so an instance must only be used by a single thread. The static methods use
+ * an instance that is only accessed by the main ui thread.
+ */
+public class StringFormatter {
+
+	// accented version of a letter followed by "'" or "~", 0 if none.
+	private static final char[] ACUTE_MAP = new char[128];
+	private static final char[] TILDE_MAP = new char[128];
+
+	static {
+		ACUTE_MAP['a'] = '\u00E1';
+		ACUTE_MAP['e'] = '\u00E9';
+		ACUTE_MAP['i'] = '\u00ED';
+		ACUTE_MAP['o'] = '\u00F3';
+		ACUTE_MAP['u'] = '\u00FA';
+		ACUTE_MAP['A'] = '\u00C1';
+		ACUTE_MAP['E'] = '\u00C9';
+		ACUTE_MAP['I'] = '\u00CD';
+		ACUTE_MAP['O'] = '\u00D3';
+		ACUTE_MAP['U'] = '\u00DA';
+		TILDE_MAP['n'] = '\u00F1';
+		TILDE_MAP['N'] = '\u00D1';
+	}
+
+	private static final StringFormatter _uiFormatter = new StringFormatter();
+
+	private char[] _buf = new char[64];
+
+	/**
+	 * English strings only support embedding of newline characters. No other
+	 * translation is performed.
+	 */
+	public static String formatEnglishString(String s) {
+		return _uiFormatter.formatEnglish(s);
+	}
+
+	/**
+	 * Format a Spanish string by substituting accented letters and embed
+	 * newlines instead of ";".
+	 */
+	public static String formatSpanishString(String s) {
+		return _uiFormatter.formatSpanish(s);
+	}
+
+	/**
+	 * instance version of {@link #formatEnglishString(String)}.
+	 */
+	public String formatEnglish(String s) {
+		// String.replace returns the string itself if there is no ";".
+		return s.replace(';', '\n');
+	}
+
+	/**
+	 * instance version of {@link #formatSpanishString(String)}.
+	 */
+	public String formatSpanish(String s) {
+		int len = s.length();
+
+		// find the first marker char. Nothing to do if there is none.
+		int i = 0;
+		while (i < len && !isMarker(s.charAt(i))) {
+			++i;
+		}
+		if (i == len)
+			return s;
+
+		if (_buf.length < len) {
+			_buf = new char[len];
+		}
+		char[] buf = _buf;
+		s.getChars(0, i, buf, 0);
+		int out = i;
+
+		// a marker combines with the letter before it. Looking at the output
+		// rather than the input means a letter is never combined twice.
+		for (; i < len; ++i) {
+			char c = s.charAt(i);
+			if (c == ';') {
+				c = '\n';
+			} else if (out > 0 && buf[out - 1] < 128) {
+				char accented = 0;
+				if (c == '\'') {
+					accented = ACUTE_MAP[buf[out - 1]];
+				} else if (c == '~') {
+					accented = TILDE_MAP[buf[out - 1]];
+				}
+				if (accented != 0) {
+					buf[out - 1] = accented;
+					continue;
+				}
+			}
+			buf[out++] = c;
+		}
+
+		return new String(buf, 0, out);
+	}
+
+	private static boolean isMarker(char c) {
+		return c == ';' || c == '\'' || c == '~';
+	}
+}
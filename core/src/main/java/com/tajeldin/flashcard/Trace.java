@@ -0,0 +1,189 @@
+package com.tajeldin.flashcard;
+
+import java.io.BufferedOutputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.lang.ref.WeakReference;
+import java.util.ArrayList;
+
+/**
+ * Binary event trace for the hot paths (message dispatch, prefetch queue,
+ * queries) that are too frequent to log as text. Every thread records into
+ * its own preallocated ring of fixed size records (time, event id and three
+ * int args), so recording an event neither allocates nor locks. Once a ring
+ * is full, the oldest records are overwritten. The rings of finished threads
+ * are kept for a dump, but only the {@link #MAX_RETIRED_RINGS} newest.
+ * <p>
+ * Tracing is off unless {@link AppConfig#_trace} is set, in which case an
+ * event costs a field read. The rings can be written to a file with
+ * {@link #dumpToFile(File)} and turned into text offline by
+ * {@link TraceDecoder}.
+ * <p>
+ * File format (big endian): magic, version, wall clock time (ms) and
+ * {@link System#nanoTime()} at the time of the dump, number of rings, then
+ * for each ring the thread name (modified UTF-8), the number of records and
+ * the records from oldest to newest, {@link #RECORD_LONGS} longs each.
+ */
+public class Trace {
+
+	static final int MAGIC = 0x46435452; // "FCTR"
+	static final int VERSION = 1;
+
+	/** records per thread, must be a power of 2. */
+	static final int RING_SIZE = 4096;
+
+	/** number of rings of finished threads kept for a dump. */
+	static final int MAX_RETIRED_RINGS = 4;
+
+	/**
+	 * a record is the time (ns), the event id and first arg, and the second
+	 * and third arg.
+	 */
+	static final int RECORD_LONGS = 3;
+
+	// event ids. Args are listed in TraceDecoder.
+
+	/** a message is handed to its receiver. */
+	public static final int MSG_BEGIN = 1;
+	/** the receiver returned from a message. */
+	public static final int MSG_END = 2;
+	/** the controller got a flashcard from a prefetch queue. */
+	public static final int FC_PREFETCH_HIT = 3;
+	/** the controller found a prefetch queue empty. */
+	public static final int FC_PREFETCH_MISS = 4;
+	/** the controller got a query result. */
+	public static final int FC_SET_RECEIVED = 5;
+	/** the controller dropped a query result it no longer waits for. */
+	public static final int FC_SET_STALE = 6;
+	/** the db finished a flashcard query. */
+	public static final int QUERY_RESULT = 7;
+	/** a prefetch queue sent a query. */
+	public static final int FC_QUERY = 8;
+
+	private static final ThreadLocal<Ring> _ring = new ThreadLocal<Ring>() {
+		@Override
+		protected Ring initialValue() {
+			Ring r = new Ring(Thread.currentThread());
+			synchronized (_rings) {
+				pruneRetiredRings();
+				_rings.add(r);
+			}
+			return r;
+		}
+	};
+
+	// the rings of live threads and of the last finished ones, oldest first.
+	private static final ArrayList<Ring> _rings = new ArrayList<Ring>();
+
+	/**
+	 * drop the oldest rings of finished threads beyond
+	 * {@link #MAX_RETIRED_RINGS}. Must be called with _rings locked.
+	 */
+	private static void pruneRetiredRings() {
+		int retired = 0;
+		for (int i = 0; i < _rings.size(); ++i) {
+			if (!_rings.get(i).isLive())
+				++retired;
+		}
+		for (int i = 0; i < _rings.size() && retired > MAX_RETIRED_RINGS;) {
+			if (!_rings.get(i).isLive()) {
+				_rings.remove(i);
+				--retired;
+			} else {
+				++i;
+			}
+		}
+	}
+
+	/**
+	 * the ring of a single thread. Only the owning thread writes to it, a dump
+	 * may see a record in progress as garbage.
+	 */
+	private static class Ring {
+		final String _threadName;
+		// weak, so a ring does not keep its finished thread around.
+		final WeakReference<Thread> _thread;
+		final long[] _records = new long[RING_SIZE * RECORD_LONGS];
+		// index of the next record to write.
+		volatile int _next = 0;
+		// true once the ring was filled and old records are overwritten.
+		volatile boolean _wrapped = false;
+
+		Ring(Thread thread) {
+			_threadName = thread.getName();
+			_thread = new WeakReference<Thread>(thread);
+		}
+
+		boolean isLive() {
+			Thread t = _thread.get();
+			return t != null && t.isAlive();
+		}
+
+		void record(int event, int a0, int a1, int a2) {
+			int next = _next;
+			int i = next * RECORD_LONGS;
+			_records[i] = System.nanoTime();
+			_records[i + 1] = ((long) event << 32) | (a0 & 0xffffffffL);
+			_records[i + 2] = ((long) a1 << 32) | (a2 & 0xffffffffL);
+			next = (next + 1) & (RING_SIZE - 1);
+			if (next == 0) {
+				_wrapped = true;
+			}
+			_next = next;
+		}
+
+		void write(DataOutputStream out) throws IOException {
+			int next = _next;
+			boolean wrapped = _wrapped;
+			out.writeUTF(_threadName);
+			out.writeInt(wrapped ? RING_SIZE : next);
+			if (wrapped) {
+				for (int i = next * RECORD_LONGS; i < _records.length; ++i) {
+					out.writeLong(_records[i]);
+				}
+			}
+			for (int i = 0; i < next * RECORD_LONGS; ++i) {
+				out.writeLong(_records[i]);
+			}
+		}
+	}
+
+	public static void event(int event, int a0) {
+		if (AppConfig._trace)
+			_ring.get().record(event, a0, 0, 0);
+	}
+
+	public static void event(int event, int a0, int a1) {
+		if (AppConfig._trace)
+			_ring.get().record(event, a0, a1, 0);
+	}
+
+	public static void event(int event, int a0, int a1, int a2) {
+		if (AppConfig._trace)
+			_ring.get().record(event, a0, a1, a2);
+	}
+
+	/**
+	 * write the rings of all threads to the given file.
+	 */
+	public static void dumpToFile(File file) throws IOException {
+		DataOutputStream out = new DataOutputStream(new BufferedOutputStream(
+				new FileOutputStream(file)));
+		try {
+			out.writeInt(MAGIC);
+			out.writeInt(VERSION);
+			out.writeLong(System.currentTimeMillis());
+			out.writeLong(System.nanoTime());
+			synchronized (_rings) {
+				out.writeInt(_rings.size());
+				for (Ring r : _rings) {
+					r.write(out);
+				}
+			}
+		} finally {
+			out.close();
+		}
+	}
+}
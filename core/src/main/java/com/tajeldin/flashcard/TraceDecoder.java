@@ -0,0 +1,133 @@
+package com.tajeldin.flashcard;
+
+import java.io.BufferedInputStream;
+import java.io.DataInputStream;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.PrintStream;
+import java.text.SimpleDateFormat;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.Date;
+
+/**
+ * Offline decoder of the files written by {@link Trace#dumpToFile}. Prints
+ * the events of all threads as text, one line per event in time order:
+ *
+ * <pre>
+ * 12:00:01.234 +0.018ms [controller] MSG_BEGIN MSG_GET_NEXT_FC a1=0 a2=0
+ * </pre>
+ *
+ * Usage: <code>java -cp core.jar com.tajeldin.flashcard.TraceDecoder trace.bin</code>
+ */
+public class TraceDecoder {
+
+	private static class Event {
+		String thread;
+		long time;
+		int id;
+		int a0;
+		int a1;
+		int a2;
+	}
+
+	private long _dumpWallMillis;
+	private long _dumpNanos;
+	private final ArrayList<Event> _events = new ArrayList<Event>();
+
+	/**
+	 * read all events of a trace file.
+	 */
+	void read(DataInputStream in) throws IOException {
+		if (in.readInt() != Trace.MAGIC)
+			throw new IOException("not a trace file");
+		int version = in.readInt();
+		if (version != Trace.VERSION)
+			throw new IOException("unsupported trace version " + version);
+		_dumpWallMillis = in.readLong();
+		_dumpNanos = in.readLong();
+		int rings = in.readInt();
+		for (int r = 0; r < rings; ++r) {
+			String thread = in.readUTF();
+			int count = in.readInt();
+			for (int i = 0; i < count; ++i) {
+				Event e = new Event();
+				e.thread = thread;
+				e.time = in.readLong();
+				long l = in.readLong();
+				e.id = (int) (l >>> 32);
+				e.a0 = (int) l;
+				l = in.readLong();
+				e.a1 = (int) (l >>> 32);
+				e.a2 = (int) l;
+				_events.add(e);
+			}
+		}
+		Collections.sort(_events, new Comparator<Event>() {
+			public int compare(Event a, Event b) {
+				return (a.time < b.time) ? -1 : ((a.time == b.time) ? 0 : 1);
+			}
+		});
+	}
+
+	/**
+	 * print the events with the wall clock time and the time since the
+	 * previous event.
+	 */
+	void print(PrintStream out) {
+		SimpleDateFormat fmt = new SimpleDateFormat("HH:mm:ss.SSS");
+		long prev = _events.isEmpty() ? 0 : _events.get(0).time;
+		for (Event e : _events) {
+			long wall = _dumpWallMillis - (_dumpNanos - e.time) / 1000000;
+			out.println(fmt.format(new Date(wall))
+					+ String.format(" +%.3fms [%s] ", (e.time - prev) / 1e6,
+							e.thread) + format(e));
+			prev = e.time;
+		}
+	}
+
+	static String format(Event e) {
+		switch (e.id) {
+		case Trace.MSG_BEGIN:
+			return "MSG_BEGIN " + MsgType.getMsgName(e.a0) + " a1=" + e.a1
+					+ " a2=" + e.a2;
+		case Trace.MSG_END:
+			return "MSG_END " + MsgType.getMsgName(e.a0);
+		case Trace.FC_PREFETCH_HIT:
+			return "FC_PREFETCH_HIT id=" + e.a0 + " level=" + e.a1;
+		case Trace.FC_PREFETCH_MISS:
+			return "FC_PREFETCH_MISS level=" + e.a0 + " misses=" + e.a1
+					+ " dequeues=" + e.a2;
+		case Trace.FC_SET_RECEIVED:
+			return "FC_SET_RECEIVED level=" + e.a0 + " count=" + e.a1
+					+ " maxId=" + e.a2;
+		case Trace.FC_SET_STALE:
+			return "FC_SET_STALE level=" + e.a0 + " minId=" + e.a1;
+		case Trace.QUERY_RESULT:
+			return "QUERY_RESULT level=" + e.a0 + " count=" + e.a1
+					+ " maxId=" + e.a2;
+		case Trace.FC_QUERY:
+			return "FC_QUERY level=" + e.a0 + " minId=" + e.a1 + " limit="
+					+ e.a2;
+		default:
+			return "EVENT_" + e.id + " " + e.a0 + " " + e.a1 + " " + e.a2;
+		}
+	}
+
+	public static void main(String[] args) throws IOException {
+		if (args.length != 1) {
+			System.err.println("usage: TraceDecoder <trace file>");
+			System.exit(1);
+		}
+		TraceDecoder decoder = new TraceDecoder();
+		DataInputStream in = new DataInputStream(new BufferedInputStream(
+				new FileInputStream(args[0])));
+		try {
+			decoder.read(in);
+		} finally {
+			in.close();
+		}
+		decoder.print(System.out);
+	}
+}
@@ -0,0 +1,191 @@
+package com.tajeldin.flashcard;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.fail;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+public class CsvImportParserTest {
+
+	// the read buffer of the parser is 64 KB.
+	private static final int BUFFER_SIZE = 64 * 1024;
+
+	@Rule
+	public TemporaryFolder _tmp = new TemporaryFolder();
+
+	private File writeFile(String text) throws IOException {
+		File file = _tmp.newFile();
+		FileOutputStream out = new FileOutputStream(file);
+		try {
+			out.write(text.getBytes("UTF-8"));
+		} finally {
+			out.close();
+		}
+		return file;
+	}
+
+	/**
+	 * read all records as "spanish|english" strings.
+	 */
+	private static List<String> readAll(CsvImportParser parser) {
+		List<String> records = new ArrayList<String>();
+		Flashcard fc;
+		while ((fc = parser.getNextEntry()) != null) {
+			records.add(fc.getLang2Str() + "|" + fc.getLang1Str());
+			fc.release();
+		}
+		return records;
+	}
+
+	@Test
+	public void parsesQuotedFields() throws IOException {
+		File file = writeFile("\"uno, dos\",\"one, two\"\n"
+				+ "\"dice \"\"hola\"\"\",says \"\"hi\"\"\n"
+				+ "\"dos\nli'neas\",two lines,ignored\n"
+				+ "\"\"\"\",quote\n");
+		List<String> records = readAll(new CsvImportParser(file));
+
+		assertEquals(4, records.size());
+		assertEquals("uno, dos|one, two", records.get(0));
+		assertEquals("dice \"hola\"|says \"\"hi\"\"", records.get(1));
+		assertEquals("dos\nli'neas|two lines", records.get(2));
+		assertEquals("\"|quote", records.get(3));
+	}
+
+	@Test
+	public void handlesLineBreaks() throws IOException {
+		File file = writeFile("\uFEFFuno,one\r\n\r\ndos,two\rtres,three\n\n"
+				+ "cuatro,four");
+		CsvImportParser parser = new CsvImportParser(file);
+		List<String> records = readAll(parser);
+
+		assertEquals(4, records.size());
+		assertEquals("uno|one", records.get(0));
+		assertEquals("dos|two", records.get(1));
+		assertEquals("tres|three", records.get(2));
+		assertEquals("cuatro|four", records.get(3));
+		assertEquals(100, parser.getCompletedPercentEstimate());
+	}
+
+	@Test
+	public void reportsLineOfBadRecord() throws IOException {
+		File file = writeFile("uno,one\r\n\"dos\r\nlines\",two\r\n\r\ntres\r\n");
+		CsvImportParser parser = new CsvImportParser(file);
+		readEntries(parser, 2);
+		try {
+			parser.getNextEntry();
+			fail("no error for a record without english phrase");
+		} catch (ImportFileParser.ParserError e) {
+			assertEquals("Missing phrase in entry [" + file + ":5]",
+					e.getMessage());
+		}
+	}
+
+	@Test
+	public void failsOnUnterminatedQuote() throws IOException {
+		File file = writeFile("uno,one\n\"dos,two\n");
+		CsvImportParser parser = new CsvImportParser(file);
+		readEntries(parser, 1);
+		try {
+			parser.getNextEntry();
+			fail("no error for an unterminated quote");
+		} catch (ImportFileParser.ParserError e) {
+			assertEquals("Unterminated quoted field [" + file + ":3]",
+					e.getMessage());
+		}
+	}
+
+	private static void readEntries(CsvImportParser parser, int count) {
+		for (int i = 0; i < count; ++i) {
+			parser.getNextEntry().release();
+		}
+	}
+
+	@Test
+	public void resumesAfterEachRecord() throws IOException {
+		String text = "\uFEFFuno,one\r\n\"dos\r\nlines\",two\r\n\r\n"
+				+ "tres,three\rcuatro,four\n\"cinco\",\"five\"";
+		File file = writeFile(text);
+		List<String> all = readAll(new CsvImportParser(file));
+		assertEquals(5, all.size());
+
+		// resuming at the checkpoint after any record reads the rest.
+		for (int n = 0; n <= all.size(); ++n) {
+			CsvImportParser parser = new CsvImportParser(file);
+			readEntries(parser, n);
+			CsvImportParser resumed = new CsvImportParser(file,
+					parser.getResumeOffset(), parser.getResumeLine());
+			parser.close();
+			assertEquals("resume after " + n, all.subList(n, all.size()),
+					readAll(resumed));
+		}
+	}
+
+	@Test
+	public void resumeKeepsLineNumbers() throws IOException {
+		File file = writeFile("uno,one\r\n\"dos\nlines\",two\r\ntres\r\n");
+		CsvImportParser parser = new CsvImportParser(file);
+		readEntries(parser, 2);
+		assertEquals(3, parser.getResumeLine());
+
+		CsvImportParser resumed = new CsvImportParser(file,
+				parser.getResumeOffset(), parser.getResumeLine());
+		parser.close();
+		try {
+			resumed.getNextEntry();
+			fail("no error for a record without english phrase");
+		} catch (ImportFileParser.ParserError e) {
+			assertEquals("Missing phrase in entry [" + file + ":4]",
+					e.getMessage());
+		}
+	}
+
+	@Test
+	public void crlfAcrossBufferBoundary() throws IOException {
+		StringBuilder text = new StringBuilder();
+		// the "\r" of the first record is the last byte of the buffer.
+		text.append("a,");
+		while (text.length() < BUFFER_SIZE - 1) {
+			text.append('b');
+		}
+		text.append("\r\nuno,one\r\n");
+		File file = writeFile(text.toString());
+
+		CsvImportParser parser = new CsvImportParser(file);
+		parser.getNextEntry().release();
+		assertEquals(BUFFER_SIZE + 1, parser.getResumeOffset());
+		assertEquals(1, parser.getResumeLine());
+		CsvImportParser resumed = new CsvImportParser(file,
+				parser.getResumeOffset(), parser.getResumeLine());
+		parser.close();
+
+		List<String> records = readAll(resumed);
+		assertEquals(1, records.size());
+		assertEquals("uno|one", records.get(0));
+	}
+
+	@Test
+	public void multiByteFieldAcrossBufferBoundary() throws IOException {
+		StringBuilder english = new StringBuilder();
+		// puts the 2 byte char after it on the buffer boundary.
+		while (english.length() < BUFFER_SIZE - 9) {
+			english.append('x');
+		}
+		File file = writeFile("nin~o,\u00F1" + english + "\u00F1\n");
+
+		CsvImportParser parser = new CsvImportParser(file);
+		Flashcard fc = parser.getNextEntry();
+		assertEquals("\u00F1" + english + "\u00F1", fc.getLang1Str());
+		fc.release();
+		assertNull(parser.getNextEntry());
+	}
+}
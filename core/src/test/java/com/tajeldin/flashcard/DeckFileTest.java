@@ -0,0 +1,96 @@
+package com.tajeldin.flashcard;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+public class DeckFileTest {
+
+	@Rule
+	public TemporaryFolder _tmp = new TemporaryFolder();
+
+	private File writeDeck(String text, boolean formatted, boolean shuffleIds)
+			throws IOException {
+		File txt = _tmp.newFile("deck.txt");
+		FileOutputStream out = new FileOutputStream(txt);
+		try {
+			out.write(text.getBytes("UTF-8"));
+		} finally {
+			out.close();
+		}
+		File deck = _tmp.newFile("deck.deck");
+		DeckFile.convert(txt, deck, formatted, shuffleIds);
+		return deck;
+	}
+
+	private static List<String> readAll(DeckFile.Reader reader) {
+		List<String> cards = new ArrayList<String>();
+		while (reader.next()) {
+			cards.add(reader.lang2 + "|" + reader.lang1);
+		}
+		return cards;
+	}
+
+	@Test
+	public void convertsAndReads() throws IOException {
+		File deck = writeDeck("e=child\ns=nin~o\n--\ne=one;two\ns=uno;dos\n",
+				true, false);
+		assertTrue(DeckFile.isDeckFile(deck));
+
+		DeckFile.Reader reader = new DeckFile.Reader(deck);
+		assertEquals(2, reader.getCount());
+		assertTrue(reader.hasFormattedText());
+		assertFalse(reader.hasShuffleIds());
+
+		assertTrue(reader.next());
+		assertEquals("child", reader.lang1);
+		assertEquals("ni\u00F1o", reader.lang2);
+		assertEquals(Flashcard.computeKey("child"), reader.key);
+		assertTrue(reader.next());
+		assertEquals("one\ntwo", reader.lang1);
+		assertEquals("uno\ndos", reader.lang2);
+		assertFalse(reader.next());
+		assertEquals(100, reader.getCompletedPercentEstimate());
+	}
+
+	@Test
+	public void resumesAfterEachCard() throws IOException {
+		File deck = writeDeck("e=a\ns=b\n--\ne=c\ns=d\n--\ne=e\ns=f\n", false,
+				true);
+		List<String> all = readAll(new DeckFile.Reader(deck));
+		assertEquals(3, all.size());
+
+		for (int n = 0; n <= all.size(); ++n) {
+			DeckFile.Reader reader = new DeckFile.Reader(deck);
+			for (int i = 0; i < n; ++i) {
+				reader.next();
+			}
+			DeckFile.Reader resumed = new DeckFile.Reader(deck,
+					reader.getOffset(), reader.getIndex());
+			assertEquals("resume after " + n, all.subList(n, all.size()),
+					readAll(resumed));
+		}
+	}
+
+	@Test
+	public void rejectsPositionInHeader() throws IOException {
+		File deck = writeDeck("e=a\ns=b\n", false, false);
+		try {
+			new DeckFile.Reader(deck, 0, 0);
+			fail("no error for a position before the first card");
+		} catch (ImportFileParser.ParserError e) {
+			// the controller moves such a checkpoint to the first card.
+		}
+	}
+}
@@ -0,0 +1,131 @@
+package com.tajeldin.flashcard;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+/**
+ * checks that the executor bus hands out messages in the order of an Android
+ * looper: by boosted target time, then FIFO.
+ */
+public class ExecutorMessageBusTest {
+
+	// message types of the test, the receiver does not care about MsgType.
+	private static final int BLOCK = 1;
+	private static final int DONE = 2;
+
+	private ExecutorMessageBus _bus;
+	private RecordingReceiver _receiver;
+	private MessageBus.Endpoint _endpoint;
+
+	/**
+	 * records the arg1 of each message. A BLOCK message holds the thread
+	 * until released, so the test can queue messages behind it.
+	 */
+	private static class RecordingReceiver implements MessageBus.Receiver {
+		final List<Integer> handled = new ArrayList<Integer>();
+		final CountDownLatch release = new CountDownLatch(1);
+		final CountDownLatch done = new CountDownLatch(1);
+
+		public boolean handleMessage(BusMessage msg) {
+			if (msg.what == BLOCK) {
+				try {
+					release.await();
+				} catch (InterruptedException e) {
+					Thread.currentThread().interrupt();
+				}
+			} else if (msg.what == DONE) {
+				done.countDown();
+			} else {
+				synchronized (handled) {
+					handled.add(msg.arg1);
+				}
+			}
+			return true;
+		}
+
+		List<Integer> getHandled() {
+			synchronized (handled) {
+				return new ArrayList<Integer>(handled);
+			}
+		}
+	}
+
+	@Before
+	public void setUp() {
+		_bus = new ExecutorMessageBus();
+		_receiver = new RecordingReceiver();
+		_endpoint = _bus.startEndpoint("test", _receiver);
+		_endpoint.send(BLOCK, 0, 0, null, 0);
+	}
+
+	@After
+	public void tearDown() {
+		_bus.shutdown();
+	}
+
+	private void releaseAndWait() throws InterruptedException {
+		_endpoint.send(DONE, 0, 0, null, 0);
+		_receiver.release.countDown();
+		assertTrue(_receiver.done.await(5, TimeUnit.SECONDS));
+	}
+
+	@Test
+	public void boostedMessagesGoFirst() throws InterruptedException {
+		_endpoint.send(10, 1, 0, null, MsgDispatcher.BULK_BOOST_MS);
+		_endpoint.send(10, 2, 0, null, MsgDispatcher.BACKGROUND_BOOST_MS);
+		_endpoint.send(10, 3, 0, null, MsgDispatcher.INTERACTIVE_BOOST_MS);
+		_endpoint.send(10, 4, 0, null, MsgDispatcher.BULK_BOOST_MS);
+		// DONE is bulk, so it is handled after all of these.
+		_endpoint.send(10, 5, 0, null, MsgDispatcher.BACKGROUND_BOOST_MS);
+		releaseAndWait();
+
+		assertEquals(Arrays.asList(3, 2, 5, 1, 4), _receiver.getHandled());
+	}
+
+	@Test
+	public void sameClassIsFifo() throws InterruptedException {
+		List<Integer> expected = new ArrayList<Integer>();
+		for (int i = 0; i < 100; ++i) {
+			_endpoint.send(10, i, 0, null, MsgDispatcher.BACKGROUND_BOOST_MS);
+			expected.add(i);
+		}
+		releaseAndWait();
+
+		assertEquals(expected, _receiver.getHandled());
+	}
+
+	@Test
+	public void removeMessagesDropsQueuedType() throws InterruptedException {
+		_endpoint.send(10, 1, 0, null, 0);
+		_endpoint.send(11, 2, 0, null, 0);
+		_endpoint.send(10, 3, 0, null, 0);
+		_endpoint.send(12, 4, 0, null, 0);
+		_endpoint.removeMessages(10);
+		releaseAndWait();
+
+		assertEquals(Arrays.asList(2, 4), _receiver.getHandled());
+	}
+
+	@Test
+	public void delayedMessageIsQueuedWhenDue() throws InterruptedException {
+		_endpoint.sendDelayed(10, 1, 0, null, 200, 0);
+		// not in the queue yet, so it is not removed.
+		_endpoint.removeMessages(10);
+		_endpoint.send(10, 2, 0, null, 0);
+		_receiver.release.countDown();
+		Thread.sleep(400);
+		releaseAndWait();
+
+		assertEquals(Arrays.asList(2, 1), _receiver.getHandled());
+	}
+}
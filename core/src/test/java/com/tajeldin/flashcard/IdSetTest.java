@@ -0,0 +1,66 @@
+package com.tajeldin.flashcard;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.util.HashSet;
+import java.util.Random;
+
+import org.junit.Test;
+
+public class IdSetTest {
+
+	@Test
+	public void addAndContains() {
+		IdSet set = new IdSet();
+		assertFalse(set.contains(5));
+		assertTrue(set.add(5));
+		assertFalse(set.add(5));
+		assertTrue(set.contains(5));
+		assertFalse(set.contains(6));
+		assertEquals(1, set.size());
+	}
+
+	@Test
+	public void growsPastInitialTable() {
+		IdSet set = new IdSet();
+		for (int id = 1; id <= 100000; ++id) {
+			assertTrue(set.add(id));
+		}
+		assertEquals(100000, set.size());
+		for (int id = 1; id <= 100000; ++id) {
+			assertTrue(set.contains(id));
+		}
+		assertFalse(set.contains(100001));
+	}
+
+	@Test
+	public void matchesHashSet() {
+		IdSet set = new IdSet();
+		HashSet<Integer> expected = new HashSet<Integer>();
+		Random random = new Random(3);
+		for (int i = 0; i < 50000; ++i) {
+			// a small range, so there are plenty of duplicates.
+			int id = 1 + random.nextInt(30000);
+			assertEquals(expected.add(id), set.add(id));
+		}
+		assertEquals(expected.size(), set.size());
+		for (int id = 1; id <= 30000; ++id) {
+			assertEquals(expected.contains(id), set.contains(id));
+		}
+	}
+
+	@Test
+	public void largeIds() {
+		IdSet set = new IdSet();
+		int[] ids = { Integer.MAX_VALUE, 1 << 30, 1 << 29, 1024, 2048, 1 };
+		for (int id : ids) {
+			assertTrue(set.add(id));
+		}
+		for (int id : ids) {
+			assertTrue(set.contains(id));
+		}
+		assertFalse(set.contains(4096));
+	}
+}
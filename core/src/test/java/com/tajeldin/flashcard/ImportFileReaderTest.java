@@ -0,0 +1,162 @@
+package com.tajeldin.flashcard;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+public class ImportFileReaderTest {
+
+	// the initial buffer of the reader is 64 KB.
+	private static final int BUFFER_SIZE = 64 * 1024;
+
+	@Rule
+	public TemporaryFolder _tmp = new TemporaryFolder();
+
+	private File writeFile(byte[] bytes) throws IOException {
+		File file = _tmp.newFile();
+		FileOutputStream out = new FileOutputStream(file);
+		try {
+			out.write(bytes);
+		} finally {
+			out.close();
+		}
+		return file;
+	}
+
+	private static byte[] utf8(String s) throws IOException {
+		return s.getBytes("UTF-8");
+	}
+
+	/**
+	 * read all lines of the reader as strings.
+	 */
+	private static List<String> readLines(ImportFileReader reader)
+			throws IOException {
+		List<String> lines = new ArrayList<String>();
+		while (reader.nextLine()) {
+			lines.add(reader.decode(reader.getLineStart(), reader.getLineEnd()));
+		}
+		reader.close();
+		return lines;
+	}
+
+	@Test
+	public void skipsByteOrderMark() throws IOException {
+		ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+		bytes.write(new byte[] { (byte) 0xEF, (byte) 0xBB, (byte) 0xBF });
+		bytes.write(utf8("e=one\ns=uno\n"));
+		ImportFileReader reader = new ImportFileReader(writeFile(bytes
+				.toByteArray()));
+
+		assertTrue(reader.nextLine());
+		assertTrue(reader.lineStartsWith('e', '='));
+		assertEquals("e=one",
+				reader.decode(reader.getLineStart(), reader.getLineEnd()));
+		assertEquals(1, reader.getLineNumber());
+		reader.close();
+	}
+
+	@Test
+	public void stripsLineTerminators() throws IOException {
+		File file = writeFile(utf8("a\r\nb\n\nc"));
+		ImportFileReader reader = new ImportFileReader(file);
+		List<String> lines = readLines(reader);
+
+		assertEquals(4, lines.size());
+		assertEquals("a", lines.get(0));
+		assertEquals("b", lines.get(1));
+		assertEquals("", lines.get(2));
+		assertEquals("c", lines.get(3));
+		assertEquals(file.length(), reader.getOffset());
+	}
+
+	@Test
+	public void multiByteCharAcrossBufferBoundary() throws IOException {
+		StringBuilder first = new StringBuilder();
+		// the 3 byte euro sign starts 2 bytes before the end of the buffer.
+		for (int i = 0; i < BUFFER_SIZE - 2; ++i) {
+			first.append('a');
+		}
+		first.append('\u20AC');
+		String second = "x\uD83D\uDE00y";
+		File file = writeFile(utf8(first + "\n" + second + "\n"));
+
+		List<String> lines = readLines(new ImportFileReader(file));
+		assertEquals(2, lines.size());
+		assertEquals(first.toString(), lines.get(0));
+		assertEquals(second, lines.get(1));
+	}
+
+	@Test
+	public void lineLongerThanBuffer() throws IOException {
+		StringBuilder line = new StringBuilder();
+		for (int i = 0; i < 3 * BUFFER_SIZE; ++i) {
+			line.append((i % 7 == 0) ? '\u00F1' : 'b');
+		}
+		File file = writeFile(utf8("start\n" + line + "\nend\n"));
+
+		List<String> lines = readLines(new ImportFileReader(file));
+		assertEquals(3, lines.size());
+		assertEquals(line.toString(), lines.get(1));
+		assertEquals("end", lines.get(2));
+	}
+
+	@Test
+	public void randomMultiByteLines() throws IOException {
+		String[] chars = { "a", "\u00E9", "\u20AC", "\uD83D\uDE00", ";" };
+		Random random = new Random(11);
+		List<String> expected = new ArrayList<String>();
+		StringBuilder text = new StringBuilder();
+		// a few buffers worth of lines of every length.
+		while (text.length() < 4 * BUFFER_SIZE) {
+			StringBuilder line = new StringBuilder();
+			int len = random.nextInt(200);
+			for (int i = 0; i < len; ++i) {
+				line.append(chars[random.nextInt(chars.length)]);
+			}
+			expected.add(line.toString());
+			text.append(line).append(random.nextBoolean() ? "\n" : "\r\n");
+		}
+		File file = writeFile(utf8(text.toString()));
+
+		ImportFileReader reader = new ImportFileReader(file);
+		assertEquals(expected, readLines(reader));
+		assertEquals(file.length(), reader.getOffset());
+	}
+
+	@Test
+	public void readsByteRange() throws IOException {
+		File file = writeFile(utf8("one\nd\u00F3s\ntres\ncuatro\n"));
+		// the lines that start in [4, 13): the second and third line.
+		ImportFileReader reader = new ImportFileReader(file, 4, 13);
+
+		assertTrue(reader.nextLine());
+		assertEquals("d\u00F3s",
+				reader.decode(reader.getLineStart(), reader.getLineEnd()));
+		assertEquals(9, reader.getOffset());
+		assertTrue(reader.nextLine());
+		assertEquals("tres",
+				reader.decode(reader.getLineStart(), reader.getLineEnd()));
+		assertFalse(reader.nextLine());
+		reader.close();
+	}
+
+	@Test
+	public void replacesMalformedBytes() throws IOException {
+		byte[] bytes = { 'a', (byte) 0xC3, 'b', (byte) 0xFF, '\n' };
+		List<String> lines = readLines(new ImportFileReader(writeFile(bytes)));
+		assertEquals("a\uFFFDb\uFFFD", lines.get(0));
+	}
+}
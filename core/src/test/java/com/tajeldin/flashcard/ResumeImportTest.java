@@ -0,0 +1,125 @@
+package com.tajeldin.flashcard;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertTrue;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+/**
+ * checks how the controller resumes an interrupted import, with the ui and
+ * db replaced by receivers that just record their messages.
+ */
+public class ResumeImportTest {
+
+	@Rule
+	public TemporaryFolder _tmp = new TemporaryFolder();
+
+	private ExecutorMessageBus _bus;
+	private String _snapshotPath;
+	private final LinkedBlockingQueue<BusMessage> _uiMessages = new LinkedBlockingQueue<BusMessage>();
+	private final LinkedBlockingQueue<BusMessage> _dbMessages = new LinkedBlockingQueue<BusMessage>();
+
+	private static class RecordingReceiver implements MessageBus.Receiver {
+		private final LinkedBlockingQueue<BusMessage> _messages;
+
+		RecordingReceiver(LinkedBlockingQueue<BusMessage> messages) {
+			_messages = messages;
+		}
+
+		public boolean handleMessage(BusMessage msg) {
+			_messages.add(msg);
+			return true;
+		}
+	}
+
+	@Before
+	public void setUp() {
+		_snapshotPath = AppConfig._snapshotPath;
+		AppConfig._snapshotPath = new File(_tmp.getRoot(), "snapshot.bin")
+				.toString();
+		_bus = new ExecutorMessageBus();
+		MsgDispatcher.setUiEndpoint(_bus.startEndpoint("ui",
+				new RecordingReceiver(_uiMessages)));
+		MsgDispatcher.setDbEndpoint(_bus.startEndpoint("db",
+				new RecordingReceiver(_dbMessages)));
+		new FlashcardController(_bus);
+	}
+
+	@After
+	public void tearDown() {
+		_bus.shutdown();
+		MsgDispatcher.setUiEndpoint(null);
+		MsgDispatcher.setDbEndpoint(null);
+		MsgDispatcher.setControllerEndpoint(null);
+		ProgressActivityState.finishProgress();
+		ProgressActivityState.isActive = false;
+		AppConfig._snapshotPath = _snapshotPath;
+	}
+
+	/**
+	 * wait for the next message of the given type, skipping any others.
+	 */
+	private static BusMessage waitFor(LinkedBlockingQueue<BusMessage> queue,
+			int what) throws InterruptedException {
+		while (true) {
+			BusMessage msg = queue.poll(5, TimeUnit.SECONDS);
+			assertNotNull("no " + MsgType.getMsgName(what), msg);
+			if (msg.what == what)
+				return msg;
+		}
+	}
+
+	private File writeDeck() throws IOException {
+		File txt = _tmp.newFile("deck.txt");
+		FileOutputStream out = new FileOutputStream(txt);
+		try {
+			out.write("e=hello\ns=hola\n--\ne=dog\ns=perro\n".getBytes("UTF-8"));
+		} finally {
+			out.close();
+		}
+		File deck = _tmp.newFile("deck.deck");
+		DeckFile.convert(txt, deck, false, false);
+		return deck;
+	}
+
+	@Test
+	public void resumesDeckBeforeFirstSlice() throws Exception {
+		File deck = writeDeck();
+		// the checkpoint of a deck import that was interrupted before its
+		// first slice was committed.
+		ImportCheckpoint checkpoint = new ImportCheckpoint(deck.toString(),
+				deck.length(), deck.lastModified(), false, true);
+		MsgDispatcher.sendMessageToController(MsgType.MSG_RESUME_IMPORT, 0, 0,
+				checkpoint);
+
+		BusMessage msg = waitFor(_dbMessages, MsgType.MSG_DB_START_IMPORT);
+		ImportCheckpoint started = (ImportCheckpoint) msg.obj;
+		assertEquals(DeckFile.HEADER_SIZE, started.offset);
+		assertEquals(0, started.line);
+		waitFor(_uiMessages, MsgType.MSG_LAUNCH_PROGRESS_ACTIVITY);
+	}
+
+	@Test
+	public void abortsResumeOfMissingFile() throws Exception {
+		File missing = new File(_tmp.getRoot(), "missing.deck");
+		ImportCheckpoint checkpoint = new ImportCheckpoint(missing.toString(),
+				10, 1, false, true);
+		MsgDispatcher.sendMessageToController(MsgType.MSG_RESUME_IMPORT, 0, 0,
+				checkpoint);
+
+		waitFor(_dbMessages, MsgType.MSG_DB_ABORT_IMPORT);
+		BusMessage msg = waitFor(_uiMessages, MsgType.MSG_SHOW_ERROR_MSG);
+		assertTrue(((String) msg.obj).contains(missing.toString()));
+	}
+}
@@ -0,0 +1,99 @@
+package com.tajeldin.flashcard;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import org.junit.Test;
+
+public class ShuffleIdGeneratorTest {
+
+	/**
+	 * the ids are distinct and in range. The permutation is a Feistel network,
+	 * so it is a bijection by construction. Checking all 2^30 ids takes most of
+	 * a minute, so only the first 2^24 are checked, through a bitmap of the
+	 * whole range.
+	 */
+	@Test
+	public void idsAreDistinct() {
+		ShuffleIdGenerator gen = new ShuffleIdGenerator(0x5EEDL);
+		// one bit per id in [1, 2^30].
+		long[] seen = new long[(ShuffleIdGenerator.MAX_IDS >>> 6) + 1];
+		for (int n = 0; n < (1 << 24); ++n) {
+			int id = gen.next();
+			if (id < 1 || id > ShuffleIdGenerator.MAX_IDS) {
+				fail("id " + id + " out of range");
+			}
+			long bit = 1L << (id & 63);
+			if ((seen[id >>> 6] & bit) != 0) {
+				fail("id " + id + " generated twice");
+			}
+			seen[id >>> 6] |= bit;
+		}
+	}
+
+	/**
+	 * the ids of a small prefix are spread over the whole range.
+	 */
+	@Test
+	public void idsCoverRange() {
+		ShuffleIdGenerator gen = new ShuffleIdGenerator(9);
+		// the first 4096 ids hit each of the 16 sixteenths of the range.
+		int[] buckets = new int[16];
+		for (int n = 0; n < 4096; ++n) {
+			++buckets[(gen.next() - 1) >>> 26];
+		}
+		for (int i = 0; i < buckets.length; ++i) {
+			assertTrue("bucket " + i, buckets[i] > 128);
+		}
+	}
+
+	@Test(expected = IllegalStateException.class)
+	public void failsOnceExhausted() {
+		ShuffleIdGenerator gen = new ShuffleIdGenerator(1,
+				ShuffleIdGenerator.MAX_IDS);
+		gen.next();
+	}
+
+	@Test
+	public void continuesSequence() {
+		ShuffleIdGenerator gen = new ShuffleIdGenerator(42);
+		for (int i = 0; i < 1000; ++i) {
+			gen.next();
+		}
+		ShuffleIdGenerator resumed = new ShuffleIdGenerator(gen.getKey(),
+				gen.getCount());
+		for (int i = 0; i < 1000; ++i) {
+			assertEquals(gen.next(), resumed.next());
+		}
+		assertEquals(2000, resumed.getCount());
+	}
+
+	@Test
+	public void keyChangesOrder() {
+		ShuffleIdGenerator a = new ShuffleIdGenerator(1);
+		ShuffleIdGenerator b = new ShuffleIdGenerator(2);
+		int same = 0;
+		for (int i = 0; i < 1000; ++i) {
+			if (a.next() == b.next())
+				++same;
+		}
+		assertTrue(same < 10);
+	}
+
+	@Test
+	public void isShuffled() {
+		// sequential counts must not give sequential ids.
+		ShuffleIdGenerator gen = new ShuffleIdGenerator(7);
+		int ascending = 0;
+		int prev = gen.next();
+		for (int i = 0; i < 1000; ++i) {
+			int id = gen.next();
+			if (id == prev + 1)
+				++ascending;
+			prev = id;
+		}
+		assertFalse(ascending > 10);
+	}
+}
@@ -0,0 +1,99 @@
+package com.tajeldin.flashcard;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertSame;
+
+import java.util.HashMap;
+import java.util.Random;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+import org.junit.Test;
+
+/**
+ * checks the single pass formatter against the regex based formatter it
+ * replaced.
+ */
+public class StringFormatterTest {
+
+	private static final Pattern PATTERN = Pattern
+			.compile("[aeiouAEIOU]'|[nN]~|;");
+	private static final HashMap<String, String> MAP = new HashMap<String, String>();
+
+	static {
+		MAP.put("a'", "\u00E1");
+		MAP.put("e'", "\u00E9");
+		MAP.put("i'", "\u00ED");
+		MAP.put("o'", "\u00F3");
+		MAP.put("u'", "\u00FA");
+		MAP.put("A'", "\u00C1");
+		MAP.put("E'", "\u00C9");
+		MAP.put("I'", "\u00CD");
+		MAP.put("O'", "\u00D3");
+		MAP.put("U'", "\u00DA");
+		MAP.put("n~", "\u00F1");
+		MAP.put("N~", "\u00D1");
+		MAP.put(";", "\n");
+	}
+
+	/**
+	 * the original regex version of
+	 * {@link StringFormatter#formatSpanishString(String)}.
+	 */
+	private static String formatSpanishRegex(String s) {
+		Matcher m = PATTERN.matcher(s);
+		StringBuffer sb = new StringBuffer();
+		while (m.find()) {
+			m.appendReplacement(sb, MAP.get(m.group()));
+		}
+		m.appendTail(sb);
+		return sb.toString();
+	}
+
+	private static void assertSameAsRegex(String s) {
+		assertEquals("formatting [" + s + "]", formatSpanishRegex(s),
+				new StringFormatter().formatSpanish(s));
+	}
+
+	@Test
+	public void formatsMarkers() {
+		assertEquals("ni\u00F1o", StringFormatter.formatSpanishString("nin~o"));
+		assertEquals("la preocupaci\u00F3n",
+				StringFormatter.formatSpanishString("la preocupacio'n"));
+		assertEquals("uno\ndos", StringFormatter.formatSpanishString("uno;dos"));
+		assertEquals("uno\ndos", StringFormatter.formatEnglishString("uno;dos"));
+	}
+
+	@Test
+	public void returnsPlainStringAsIs() {
+		String s = "sencillo";
+		assertSame(s, new StringFormatter().formatSpanish(s));
+	}
+
+	@Test
+	public void edgeCasesSameAsRegex() {
+		String[] cases = { "", "'", "~", ";", "a", "a'", "a''", "a'~", "n~~",
+				"N~'", "'a", ";a'", "a;'", "x'", "nn~", "e'e'", "\u00E9'",
+				"a'b", "I'n~;O'", "it's", "~n", "a'\u00F1~" };
+		for (String s : cases) {
+			assertSameAsRegex(s);
+		}
+	}
+
+	@Test
+	public void randomStringsSameAsRegex() {
+		// mostly markers and the letters they combine with.
+		String alphabet = "aeiouAEIOUnNxy ';~\u00E1";
+		Random random = new Random(1);
+		StringFormatter formatter = new StringFormatter();
+		for (int n = 0; n < 20000; ++n) {
+			char[] chars = new char[random.nextInt(100)];
+			for (int i = 0; i < chars.length; ++i) {
+				chars[i] = alphabet.charAt(random.nextInt(alphabet.length()));
+			}
+			String s = new String(chars);
+			// reuse one instance, so a grown buffer is also covered.
+			assertEquals(formatSpanishRegex(s), formatter.formatSpanish(s));
+		}
+	}
+}
@@ -0,0 +1,15 @@
+package com.tajeldin.flashcard;
+
+import android.util.Log;
+
+/**
+ * writes the log messages of the core classes to the Android log.
+ */
+class AndroidLogger extends Logger {
+
+	@Override
+	protected void log(int level, String tag, String msg) {
+		// the Logger levels are the Android log priorities.
+		Log.println(level, tag, msg);
+	}
+}
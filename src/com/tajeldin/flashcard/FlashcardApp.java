@@ -1,8 +1,10 @@
 package com.tajeldin.flashcard;
 
+import java.io.File;
+
 import android.app.Application;
-import android.content.SharedPreferences;
 import android.content.res.Configuration;
+import android.os.Environment;
 import android.util.Log;
 
 /**
@@ -26,15 +28,29 @@ public class FlashcardApp extends Application {
 		if (LP.LOG_LIFECYCLE_EVENTS)
 			Log.d(LP.TAG, "[APP] onCreate() called.");
 
+		MsgStats.startApp();
 		super.onCreate();
 
 		setInstance(this);
-		restoreState();
+
+		// the core classes log and find the import files through AppConfig.
+		Logger.setLogger(new AndroidLogger());
+		AppConfig._importDir = new File(
+				Environment.getExternalStorageDirectory(), "AliFlashcard")
+				.toString();
+		AppConfig._snapshotPath = new File(getFilesDir(), "snapshot.bin")
+				.toString();
+
+		CardSnapshot snapshot = restoreState();
 
 		// startup the controller and DB components. UI main activity will
-		// be started by the system.
-		new FlashcardController();
-		new FlashcardDB();
+		// be started by the system. The controller serves the snapshot cards
+		// while the db opens and its first query fills the prefetch queue.
+		MessageBus bus = new HandlerMessageBus();
+		new FlashcardController(bus, snapshot);
+		new FlashcardDB(bus);
+		MsgDispatcher.sendMessageToController(MsgType.MSG_WARM_PREFETCH, 0, 0,
+				null);
 	}
 
 	@Override
@@ -42,6 +58,9 @@ public class FlashcardApp extends Application {
 		super.onTerminate();
 		if (LP.LOG_LIFECYCLE_EVENTS)
 			Log.d(LP.TAG, "[APP] onTerminate() called.");
+
+		// write out any buffered guess results.
+		MsgDispatcher.sendMessageToDB(MsgType.MSG_DB_FLUSH_STATE, 0, 0, null);
 	}
 
 	private static FlashcardApp _instance = null;
@@ -68,6 +87,16 @@ public class FlashcardApp extends Application {
 		return _curFlashcard;
 	}
 
+	private Flashcard _prevFlashcard = null;
+
+	public synchronized void setPreviousFlashcard(Flashcard fc) {
+		_prevFlashcard = fc;
+	}
+
+	public synchronized Flashcard getPreviousFlashcard() {
+		return _prevFlashcard;
+	}
+
 	private boolean _showEntireCard = true;
 
 	public boolean isShowEntireCard() {
@@ -78,29 +107,53 @@ public class FlashcardApp extends Application {
 		_showEntireCard = showEntireCard;
 	}
 
-	private SharedPreferences getPrefs() {
-		return getSharedPreferences("flashcard", MODE_PRIVATE);
-	}
-
-	// TODO: add saveState function comment.
-	public synchronized void saveState() {
+	/**
+	 * save the review position. Nothing is written on the calling (UI)
+	 * thread: the controller adds the position of the prefetch queues and
+	 * writes a {@link CardSnapshot} of the current card and the cards after
+	 * it, which the next start shows first. The db then journals the session
+	 * in the same transaction as the buffered card state.
+	 *
+	 * @return true if a session was saved, false if there was nothing to
+	 *         save.
+	 */
+	public synchronized boolean saveState() {
 		if (_curFlashcard != null) {
 			if (LP.LOG_LIFECYCLE_EVENTS)
 				Log.d(LP.TAG, "[APP] saving state");
 
-			SharedPreferences.Editor spe = getPrefs().edit();
-			spe.clear();
-			spe.putInt("id", _curFlashcard.getID());
-			spe.commit();
+			SessionState session = new SessionState();
+			session.currentId = _curFlashcard.getID();
+			session.previousId = (_prevFlashcard == null) ? 0
+					: _prevFlashcard.getID();
+			session.showEntireCard = _showEntireCard;
+			session.current = _curFlashcard.clone();
+			return MsgDispatcher.sendMessageToController(
+					MsgType.MSG_SAVE_SESSION, 0, 0, session);
 		}
+		return false;
 	}
 
-	// TODO: add restoreState func comment here.
-	private void restoreState() {
-		SharedPreferences sp = getPrefs();
-		int id = sp.getInt("id", 0);
+	/**
+	 * restore the app state saved by {@link #saveState()}. The first card of
+	 * the snapshot becomes the current card, so the main activity shows it
+	 * right away. Returns the snapshot with the remaining cards for the
+	 * controller, or null if there is none. The rest of the session is
+	 * restored once the db is open (see {@link MsgType#MSG_WARM_PREFETCH}).
+	 */
+	private CardSnapshot restoreState() {
+		CardSnapshot snapshot = CardSnapshot.read(new File(
+				AppConfig._snapshotPath));
+		Flashcard fc = (snapshot == null) ? null : snapshot.cards
+				.removeFirst();
+		if (fc != null) {
+			_curFlashcard = fc;
+			_showEntireCard = false;
+		}
 		if (LP.LOG_LIFECYCLE_EVENTS)
-			Log.d(LP.TAG, "[APP] restore state id=" + id);
+			Log.d(LP.TAG, "[APP] restore state id="
+					+ ((fc == null) ? 0 : fc.getID()));
+		return snapshot;
 	}
 
 	// TODO: need to add a resetState() method that is called after import or on
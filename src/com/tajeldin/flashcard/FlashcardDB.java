@@ -4,95 +4,327 @@ package com.tajeldin.flashcard;
 
 import java.io.File;
 import java.util.HashMap;
-import java.util.HashSet;
 import java.util.Random;
 
 import android.database.Cursor;
 import android.database.SQLException;
 import android.database.sqlite.SQLiteDatabase;
 import android.database.sqlite.SQLiteStatement;
-import android.os.Handler;
-import android.os.HandlerThread;
-import android.os.Message;
+import android.os.Build;
+import android.os.SystemClock;
 import android.util.Log;
 
 /**
- * The database component handler. It is a HandlerThread so it has its own
- * thread, looper and handler. All database related operations should be done by
+ * The database component handler. It has its own thread and message loop on
+ * the {@link MessageBus}. All database related operations should be done by
  * this class.
+ * <p>
+ * This thread is the only writer. In WAL mode the flashcard queries are run
+ * by a small pool of {@link FlashcardDBReader} threads instead, each with its
+ * own read only connection.
  */
-public class FlashcardDB extends HandlerThread implements Handler.Callback {
+public class FlashcardDB implements MessageBus.Receiver {
 
 	private static final String TBL_FC = "FC";
 	private static final String TBL_FCS = "FCS";
+	private static final String TBL_CS = "CS";
+	private static final String TBL_META = "META";
 	private static final String COL_ID = "ID";
+	private static final String COL_KEY = "KEY";
 	private static final String COL_LANG1 = "LANG1";
 	private static final String COL_LANG2 = "LANG2";
 	private static final String COL_LEVEL = "LEVEL";
 	private static final String COL_COUNT = "COUNT";
+	private static final String COL_FMT = "FMT";
+	private static final String COL_HASH = "HASH";
+	private static final String COL_NAME = "NAME";
+	private static final String COL_VALUE = "VALUE";
 	private static final String COL_FC_ID = TBL_FC + "." + COL_ID;
+	private static final String COL_FC_KEY = TBL_FC + "." + COL_KEY;
 	private static final String COL_FC_LANG1 = TBL_FC + "." + COL_LANG1;
 	private static final String COL_FC_LANG2 = TBL_FC + "." + COL_LANG2;
+	private static final String COL_FC_LEVEL = TBL_FC + "." + COL_LEVEL;
+	private static final String COL_FC_FMT = TBL_FC + "." + COL_FMT;
 	private static final String COL_FCS_LANG1 = TBL_FCS + "." + COL_LANG1;
 	private static final String COL_FCS_LEVEL = TBL_FCS + "." + COL_LEVEL;
 	private static final String COL_FCS_COUNT = TBL_FCS + "." + COL_COUNT;
+	private static final String COL_CS_KEY = TBL_CS + "." + COL_KEY;
+	private static final String COL_CS_COUNT = TBL_CS + "." + COL_COUNT;
+
+	private static final String IDX_FC_LEVEL_ID = "FC_LEVEL_ID";
+	private static final String IDX_FC_KEY = "FC_KEY";
+
+	// names of the META table entries.
+	private static final String META_ID_KEY = "id_key";
+	private static final String META_ID_COUNT = "id_count";
+	private static final String META_IMPORT_FILE = "import_file";
+	private static final String META_IMPORT_LENGTH = "import_length";
+	private static final String META_IMPORT_MODIFIED = "import_modified";
+	private static final String META_IMPORT_DIFF = "import_diff";
+	private static final String META_IMPORT_OFFSET = "import_offset";
+	private static final String META_IMPORT_LINE = "import_line";
+	private static final String META_SESSION_LEVEL = "session_level";
+	private static final String META_SESSION_CURRENT = "session_current";
+	private static final String META_SESSION_PREVIOUS = "session_previous";
+	private static final String META_SESSION_SHOW_ALL = "session_show_all";
+	private static final String META_SESSION_RESUME = "session_resume";
+
+	/**
+	 * current version of the database schema. Stored in the database file
+	 * (sqlite user_version) so that older files can be upgraded on open.
+	 * <ul>
+	 * <li>0 = original schema (level only available through FCS join).
+	 * <li>1 = LEVEL column on FC plus (LEVEL, ID) index.
+	 * <li>2 = integer keyed CS state table and KEY column on FC. The old FCS
+	 * table is migrated in the background and dropped once done.
+	 * <li>3 = FMT column on FC, set if the texts are stored display ready.
+	 * <li>4 = HASH column and KEY index on FC for diff imports, plus the META
+	 * name/value table.
+	 * </ul>
+	 */
+	private static final int DB_VERSION = 4;
+
+	/**
+	 * delay (ms) of the next drain message if the import ring was empty, so
+	 * the db thread is not parked waiting for the parser.
+	 */
+	private static final long IMPORT_DRAIN_RETRY_MS = 20;
+
+	/** number of rows migrated per transaction by the state migration. */
+	private static final int MIGRATE_CHUNK_SIZE = 500;
 
 	private static final String SQL_CREATE_FC_TBL = "CREATE TABLE " + TBL_FC
-			+ " ( " + COL_ID + " integer primary key," + COL_LANG1 + " text, "
-			+ COL_LANG2 + " text)";
+			+ " ( " + COL_ID + " integer primary key," + COL_KEY
+			+ " integer, " + COL_LANG1 + " text, " + COL_LANG2 + " text, "
+			+ COL_LEVEL + " integer default 0, " + COL_FMT
+			+ " integer default 0, " + COL_HASH + " integer)";
 
-	private static final String SQL_CREATE_FCS_TBL = "CREATE TABLE " + TBL_FCS
-			+ " ( " + COL_LANG1 + " text primary key, " + COL_LEVEL
+	private static final String SQL_CREATE_CS_TBL = "CREATE TABLE " + TBL_CS
+			+ " ( " + COL_KEY + " integer primary key, " + COL_LEVEL
 			+ " integer, " + COL_COUNT + " integer )";
 
+	private static final String SQL_CREATE_META_TBL = "CREATE TABLE "
+			+ TBL_META + " ( " + COL_NAME + " text primary key, " + COL_VALUE
+			+ " )";
+
+	private static final String SQL_CREATE_FC_LEVEL_IDX = "CREATE INDEX "
+			+ IDX_FC_LEVEL_ID + " ON " + TBL_FC + " (" + COL_LEVEL + ","
+			+ COL_ID + ")";
+
+	private static final String SQL_CREATE_FC_KEY_IDX = "CREATE INDEX "
+			+ IDX_FC_KEY + " ON " + TBL_FC + " (" + COL_KEY + ")";
+
+	private static final String SQL_ADD_FC_LEVEL_COL = "ALTER TABLE " + TBL_FC
+			+ " ADD COLUMN " + COL_LEVEL + " integer default 0";
+
+	private static final String SQL_COPY_FCS_LEVEL = "UPDATE " + TBL_FC
+			+ " SET " + COL_LEVEL + "=IFNULL((SELECT " + COL_FCS_LEVEL
+			+ " FROM " + TBL_FCS + " WHERE " + COL_FCS_LANG1 + "="
+			+ COL_FC_LANG1 + "),0)";
+
+	private static final String SQL_ADD_FC_KEY_COL = "ALTER TABLE " + TBL_FC
+			+ " ADD COLUMN " + COL_KEY + " integer";
+
+	private static final String SQL_ADD_FC_FMT_COL = "ALTER TABLE " + TBL_FC
+			+ " ADD COLUMN " + COL_FMT + " integer default 0";
+
+	private static final String SQL_ADD_FC_HASH_COL = "ALTER TABLE " + TBL_FC
+			+ " ADD COLUMN " + COL_HASH + " integer";
+
+	private static final String SQL_HAS_FCS_TBL = "SELECT count(*) FROM "
+			+ "sqlite_master WHERE type='table' AND name='" + TBL_FCS + "'";
+
+	private static final String SQL_DROP_FCS_TBL = "DROP TABLE " + TBL_FCS;
+
+	private static final String SQL_MIGRATE_SELECT_FCS = "SELECT rowid,"
+			+ COL_LANG1 + "," + COL_LEVEL + "," + COL_COUNT + " FROM "
+			+ TBL_FCS + " WHERE rowid > ? ORDER BY rowid LIMIT "
+			+ MIGRATE_CHUNK_SIZE;
+
+	// state written by guess updates during the migration is newer than the
+	// FCS copy, so never overwrite it.
+	private static final String SQL_MIGRATE_INSERT_CS = "INSERT OR IGNORE INTO "
+			+ TBL_CS + " VALUES (?,?,?)";
+
+	private static final String SQL_MIGRATE_SELECT_FC = "SELECT " + COL_ID
+			+ "," + COL_LANG1 + " FROM " + TBL_FC + " WHERE " + COL_ID
+			+ " > ? AND " + COL_KEY + " IS NULL ORDER BY " + COL_ID
+			+ " LIMIT " + MIGRATE_CHUNK_SIZE;
+
+	private static final String SQL_MIGRATE_UPDATE_FC_KEY = "UPDATE " + TBL_FC
+			+ " SET " + COL_KEY + "=? WHERE " + COL_ID + "=?";
+
+	// the level of a newly imported card is taken from the state table so that
+	// re-importing a deck keeps the current levels.
 	private static final String SQL_INSERT_FC = "INSERT INTO " + TBL_FC
-			+ " VALUES (?,?,?)";
+			+ " (" + COL_ID + "," + COL_KEY + "," + COL_LANG1 + ","
+			+ COL_LANG2 + "," + COL_FMT + "," + COL_HASH + "," + COL_LEVEL
+			+ ") VALUES (?,?,?,?,?,?,IFNULL((SELECT " + COL_LEVEL + " FROM "
+			+ TBL_CS + " WHERE " + COL_KEY + "=?),0))";
 
-	private static final String SQL_INSERT_FCS = "INSERT INTO " + TBL_FCS
-			+ " VALUES (?,?,?)";
+	// diff import statements. Cards are matched by key, unchanged cards also
+	// by content hash.
+	private static final String SQL_DIFF_FIND_SAME = "SELECT IFNULL((SELECT "
+			+ COL_ID + " FROM " + TBL_FC + " WHERE " + COL_KEY + "=? AND "
+			+ COL_HASH + "=?),0)";
 
-	private static final String SQL_DELETE_FCS = "DELETE FROM " + TBL_FCS
-			+ "  WHERE " + COL_LANG1 + "=?";
+	private static final String SQL_DIFF_SELECT_KEY = "SELECT " + COL_ID + ","
+			+ COL_HASH + " FROM " + TBL_FC + " WHERE " + COL_KEY + "=?";
 
-	private static final String SQL_QUERY2 = "SELECT " + COL_FC_ID + ","
-			+ COL_FC_LANG1 + "," + COL_FC_LANG2 + "," + COL_FCS_LEVEL + ","
-			+ COL_FCS_COUNT + " FROM " + TBL_FC + " LEFT JOIN " + TBL_FCS
-			+ " ON " + COL_FC_LANG1 + "=" + COL_FCS_LANG1 + " WHERE "
-			+ COL_FC_ID + " >= ? LIMIT " + AppConfig._maxQuerySetSize;
+	private static final String SQL_DIFF_UPDATE_FC = "UPDATE " + TBL_FC
+			+ " SET " + COL_LANG1 + "=?," + COL_LANG2 + "=?," + COL_FMT
+			+ "=?," + COL_HASH + "=? WHERE " + COL_ID + "=?";
+
+	private static final String SQL_HAS_ID = "SELECT count(*) FROM " + TBL_FC
+			+ " WHERE " + COL_ID + "=?";
+
+	private static final String SQL_SELECT_ALL_IDS = "SELECT " + COL_ID
+			+ " FROM " + TBL_FC;
+
+	private static final String SQL_DELETE_FC = "DELETE FROM " + TBL_FC
+			+ " WHERE " + COL_ID + "=?";
+
+	private static final String SQL_GET_META = "SELECT " + COL_VALUE
+			+ " FROM " + TBL_META + " WHERE " + COL_NAME + "=?";
+
+	private static final String SQL_SET_META = "INSERT OR REPLACE INTO "
+			+ TBL_META + " VALUES (?,?)";
+
+	private static final String SQL_CLEAR_IMPORT_META = "DELETE FROM "
+			+ TBL_META + " WHERE " + COL_NAME + " LIKE 'import_%'";
+
+	private static final String SQL_CLEAR_SESSION_META = "DELETE FROM "
+			+ TBL_META + " WHERE " + COL_NAME + " LIKE 'session_%'";
+
+	private static final String SQL_REPLACE_CS = "INSERT OR REPLACE INTO "
+			+ TBL_CS + " VALUES (?,?,?)";
+
+	// also sets the key as it may not have been filled in by the migration yet.
+	private static final String SQL_UPDATE_FC_STATE = "UPDATE " + TBL_FC
+			+ " SET " + COL_LEVEL + "=?," + COL_KEY + "=? WHERE " + COL_ID
+			+ "=?";
+
+	/**
+	 * query for the next set of flashcards at a level starting at a given id,
+	 * wrapping around to the start of the level in the same statement. Bind
+	 * args: level, minId, limit, level, minId, limit, limit.
+	 */
+	private static final String SQL_QUERY_LEVEL = buildLevelQuery(
+			COL_CS_COUNT, " LEFT JOIN " + TBL_CS + " ON " + COL_FC_KEY + "="
+					+ COL_CS_KEY);
+
+	/**
+	 * same as {@link #SQL_QUERY_LEVEL} but also looks at the old FCS table for
+	 * the counts that have not been migrated yet.
+	 */
+	private static final String SQL_QUERY_LEVEL_MIGRATING = buildLevelQuery(
+			"IFNULL(" + COL_CS_COUNT + "," + COL_FCS_COUNT + ")", " LEFT JOIN "
+					+ TBL_CS + " ON " + COL_FC_KEY + "=" + COL_CS_KEY
+					+ " LEFT JOIN " + TBL_FCS + " ON " + COL_FC_LANG1 + "="
+					+ COL_FCS_LANG1);
+
+	/**
+	 * query for a single flashcard by id. Bind args: id.
+	 */
+	private static final String SQL_QUERY_ID = buildIdQuery(COL_CS_COUNT,
+			" LEFT JOIN " + TBL_CS + " ON " + COL_FC_KEY + "=" + COL_CS_KEY);
+
+	/**
+	 * same as {@link #SQL_QUERY_ID} during the state migration.
+	 */
+	private static final String SQL_QUERY_ID_MIGRATING = buildIdQuery(
+			"IFNULL(" + COL_CS_COUNT + "," + COL_FCS_COUNT + ")", " LEFT JOIN "
+					+ TBL_CS + " ON " + COL_FC_KEY + "=" + COL_CS_KEY
+					+ " LEFT JOIN " + TBL_FCS + " ON " + COL_FC_LANG1 + "="
+					+ COL_FCS_LANG1);
+
+	private static String buildIdQuery(String countCol, String join) {
+		return "SELECT " + COL_FC_ID + "," + COL_FC_KEY + "," + COL_FC_LANG1
+				+ "," + COL_FC_LANG2 + "," + COL_FC_LEVEL + "," + countCol + ","
+				+ COL_FC_FMT + " FROM " + TBL_FC + join + " WHERE " + COL_FC_ID
+				+ "=?";
+	}
 
+	/**
+	 * build the query for a set of flashcards at a level. Each half is a keyset
+	 * query over an id range that is served by the (LEVEL, ID) index: one seek
+	 * followed by a bounded range read.
+	 */
+	private static String buildLevelQuery(String countCol, String join) {
+		String range = "SELECT " + COL_FC_ID + "," + COL_FC_KEY + ","
+				+ COL_FC_LANG1 + "," + COL_FC_LANG2 + "," + COL_FC_LEVEL + ","
+				+ countCol + "," + COL_FC_FMT + " FROM " + TBL_FC + join + " WHERE "
+				+ COL_FC_LEVEL + "=? AND " + COL_FC_ID + "%s ORDER BY "
+				+ COL_FC_ID + " LIMIT ?";
+		return "SELECT * FROM (" + String.format(range, " >= ?")
+				+ ") UNION ALL SELECT * FROM (" + String.format(range, " < ?")
+				+ ") LIMIT ?";
+	}
+
+	private final MessageBus _bus;
 	private SQLiteDatabase _curDB = null;
 	private HashMap<String, SQLiteStatement> _compiledStatements = null;
 	private ImportState _importState = null;
+	private StateMigration _migration = null;
+	private boolean _walEnabled = false;
+	private FlashcardDBReader[] _readers = null;
+	private CardStateBuffer _stateBuffer = new CardStateBuffer(
+			AppConfig._stateFlushSize);
+	// session to be journaled by the next state flush, null if none.
+	private SessionState _pendingSession = null;
+	private StringFormatter _formatter = new StringFormatter();
 
-	public FlashcardDB() {
-		super("db");
-		this.start();
-
-		Handler h = new Handler(this.getLooper(), this);
-		MsgDispatcher.setDbHandler(h);
+	public FlashcardDB(MessageBus bus) {
+		_bus = bus;
+		MsgDispatcher.setDbEndpoint(bus.startEndpoint("db", this));
 	}
 
-	public boolean handleMessage(Message msg) {
-		if (LP.LOG_MESSAGE_EVENTS) {
-			Log.d(LP.TAG, "[db] received message: "
-					+ MsgType.getMsgName(msg.what));
-		}
-
+	public boolean handleMessage(BusMessage msg) {
 		switch (msg.what) {
 		case MsgType.MSG_DB_START_IMPORT:
-			startImport();
+			startImport((ImportCheckpoint) msg.obj);
 			break;
 		case MsgType.MSG_DB_FINISH_IMPORT:
-			finishImport();
+			finishImport(true);
 			break;
 		case MsgType.MSG_INSERT_FC_SET:
-			insertFlashcardSet((Flashcard) msg.obj);
+			insertFlashcardSet((ImportPipeline.Batch) msg.obj);
+			break;
+		case MsgType.MSG_DB_DRAIN_IMPORT:
+			drainImport((ImportPipeline) msg.obj);
+			break;
+		case MsgType.MSG_DB_IMPORT_DECK:
+			importDeck((DeckFile.Reader) msg.obj);
 			break;
 		case MsgType.MSG_QUERY_FC_SET:
-			queryFlashcardSet(msg.arg1, msg.arg2);
+			openDB();
+			queryFlashcardSet(_curDB, _stateBuffer, _migration != null,
+					(QueryResult) msg.obj);
 			break;
 		case MsgType.MSG_UPDATE_FC:
-			updateFlashcard((Flashcard) msg.obj);
+			updateFlashcard((Flashcard) msg.obj, msg.arg1);
+			break;
+		case MsgType.MSG_DB_FLUSH_STATE:
+			flushCardState();
+			break;
+		case MsgType.MSG_DB_MIGRATE_STATE:
+			migrateStateChunk();
+			break;
+		case MsgType.MSG_DB_SAVE_SESSION:
+			// the session is saved when the app is paused, so write it (and
+			// the buffered state with it) right away.
+			_pendingSession = (SessionState) msg.obj;
+			flushCardState();
+			break;
+		case MsgType.MSG_DB_ABORT_IMPORT:
+			openDB();
+			_curDB.execSQL(SQL_CLEAR_IMPORT_META);
+			_importState = null;
+			break;
+		case MsgType.MSG_DB_LOAD_SESSION:
+			openDB();
+			MsgDispatcher.sendMessageToController(
+					MsgType.MSG_RESTORE_SESSION, 0, 0, loadSession());
 			break;
 		default:
 			Log.e(LP.TAG, "[db] unknown message type: " + msg.what);
@@ -103,51 +335,320 @@ public class FlashcardDB extends HandlerThread implements Handler.Callback {
 	}
 
 	/**
-	 * reset the database by removing all data in the flashcard table. The state
+	 * prepare the database for an import. A full import removes all data in
+	 * the flashcard table. A diff import ({@link AppConfig#_diffImport}) keeps
+	 * the flashcards and only writes the ones that changed, see
+	 * {@link #importFlashcard(int, long, String, String, boolean)}. The state
 	 * table is left intact as we want to keep our current levels and counts.
+	 * <p>
+	 * The import is recorded in the META table along with the checkpoint of
+	 * the first batch, in the same transaction that resets the flashcard
+	 * table. An interrupted import keeps its cards and just continues from
+	 * its last checkpoint.
 	 */
-	private void startImport() {
+	private void startImport(ImportCheckpoint checkpoint) {
 		openDB();
-		_curDB.delete(TBL_FC, null, null);
-		_importState = new ImportState();
+		// imported cards take their level from the new state table and diff
+		// imports match cards by key, so any pending state migration must be
+		// done first.
+		while (_migration != null) {
+			migrateStateChunk();
+		}
+		// write out buffered state before the flashcard table is changed.
+		flushCardState();
+
+		ShuffleIdGenerator idGenerator = null;
+		if (checkpoint.diff || checkpoint.isResume) {
+			idGenerator = loadIdGenerator();
+		}
+		if (idGenerator == null) {
+			idGenerator = new ShuffleIdGenerator(new Random().nextLong());
+		}
+		_importState = new ImportState(idGenerator, checkpoint);
+
+		_curDB.beginTransaction();
+		try {
+			if (!checkpoint.diff && !checkpoint.isResume) {
+				_curDB.delete(TBL_FC, null, null);
+				// the ids of the saved session are gone.
+				_curDB.execSQL(SQL_CLEAR_SESSION_META);
+			}
+			setMetaValue(META_IMPORT_FILE, checkpoint.fileName);
+			setMetaValue(META_IMPORT_LENGTH,
+					Long.toString(checkpoint.fileLength));
+			setMetaValue(META_IMPORT_MODIFIED,
+					Long.toString(checkpoint.fileModified));
+			setMetaValue(META_IMPORT_DIFF, checkpoint.diff ? "1" : "0");
+			saveImportCheckpoint(checkpoint.offset, checkpoint.line);
+			_curDB.setTransactionSuccessful();
+		} catch (SQLException e) {
+			MsgDispatcher.sendMessageToUI(MsgType.MSG_SHOW_ERROR_MSG, 0, 0,
+					"unable to start import");
+		} finally {
+			_curDB.endTransaction();
+		}
 	}
 
 	/**
-	 * finish up import by cleaning up import state.
+	 * finish up import by cleaning up import state and its checkpoint. A
+	 * complete diff import deletes the flashcards that are no longer in the
+	 * imported file. An import that stopped on an error never deletes
+	 * anything, and neither does a resumed diff import as the cards matched
+	 * before it was interrupted are not known. Those cards are deleted by the
+	 * next diff import.
 	 */
-	private void finishImport() {
+	private void finishImport(boolean complete) {
+		if (_importState == null)
+			return;
+		if (_importState.diff && complete) {
+			if (_importState.isResumed) {
+				Log.i(LP.TAG, "[import] resumed diff import keeps removed cards");
+			} else {
+				deleteUnseenFlashcards();
+			}
+		}
+		_curDB.execSQL(SQL_CLEAR_IMPORT_META);
+		if (_importState.deletedCount > 0) {
+			// the saved session may point at removed cards.
+			_curDB.execSQL(SQL_CLEAR_SESSION_META);
+		}
+		_importState.logStats();
+		boolean cardsChanged = !_importState.diff
+				|| _importState.deletedCount > 0
+				|| _importState.updatedCount > 0;
 		_importState = null;
+		MsgDispatcher.sendMessageToController(MsgType.MSG_IMPORT_FINISHED,
+				cardsChanged ? 1 : 0, 0, null);
+	}
+
+	/**
+	 * look for an import that was interrupted before it finished. If its file
+	 * did not change since, the controller is told to continue it. Otherwise
+	 * it is dropped.
+	 */
+	private void checkInterruptedImport() {
+		String fileName = getMetaValue(META_IMPORT_FILE);
+		if (fileName == null)
+			return;
+
+		ImportCheckpoint checkpoint = null;
+		try {
+			checkpoint = new ImportCheckpoint(fileName,
+					Long.parseLong(getMetaValue(META_IMPORT_LENGTH)),
+					Long.parseLong(getMetaValue(META_IMPORT_MODIFIED)),
+					"1".equals(getMetaValue(META_IMPORT_DIFF)), true);
+			checkpoint.offset = Long.parseLong(getMetaValue(META_IMPORT_OFFSET));
+			checkpoint.line = Integer.parseInt(getMetaValue(META_IMPORT_LINE));
+		} catch (NumberFormatException e) {
+			checkpoint = null;
+		}
+
+		if (checkpoint == null || !checkpoint.matchesFile()) {
+			_curDB.execSQL(SQL_CLEAR_IMPORT_META);
+			MsgDispatcher.sendMessageToUI(MsgType.MSG_SHOW_ERROR_MSG, 0, 0,
+					"import of " + fileName + " was interrupted, please import again");
+			return;
+		}
+
+		Log.i(LP.TAG, "[db] resuming import of " + fileName + " at line "
+				+ checkpoint.line);
+		MsgDispatcher.sendMessageToController(MsgType.MSG_RESUME_IMPORT, 0, 0,
+				checkpoint);
 	}
 
 	/**
-	 * update the level and count for the given flashcard in the database.
+	 * update the level and count for the given flashcard in the database. The
+	 * update is only buffered in {@link #_stateBuffer} and written out by
+	 * {@link #flushCardState()} once the buffer is full or the oldest buffered
+	 * update has waited for {@link AppConfig#_stateFlushDelay} ms.
+	 * <p>
+	 * seq is the sequence number of the update. Reader threads wait for it
+	 * before they copy the buffer, see {@link #copyCardState}.
 	 */
-	private void updateFlashcard(Flashcard fc) {
+	private void updateFlashcard(Flashcard fc, int seq) {
+		if (_stateBuffer.isFull()) {
+			// the last flush failed, try again before buffering more.
+			flushCardState();
+			if (_stateBuffer.isFull() && _stateBuffer.indexOf(fc.getID()) < 0) {
+				// still failing: write this update on its own rather than
+				// lose it.
+				writeFlashcardState(fc);
+				fc.release();
+				_stateBuffer.setAppliedSeq(seq);
+				return;
+			}
+		}
+		boolean wasEmpty = _stateBuffer.isEmpty();
+		boolean isFull = _stateBuffer.put(fc);
+		_stateBuffer.setAppliedSeq(seq);
+
+		// this flashcard is no longer used by anyone so release it.
+		fc.release();
+
+		if (isFull) {
+			flushCardState();
+		} else if (wasEmpty) {
+			MsgDispatcher.sendDelayedMessageToDB(MsgType.MSG_DB_FLUSH_STATE,
+					AppConfig._stateFlushDelay);
+		}
+	}
+
+	/**
+	 * write all buffered card state changes, and the pending session if any,
+	 * to the database in a single transaction. The journaled session thus
+	 * always matches the card state. If the transaction fails, the buffer and
+	 * the session are kept and written by the next delayed flush.
+	 */
+	private void flushCardState() {
+		if (_stateBuffer.isEmpty() && _pendingSession == null)
+			return;
 		openDB();
 
+		SQLiteStatement rStmt = getCompiledStatement(SQL_REPLACE_CS);
+		SQLiteStatement uStmt = getCompiledStatement(SQL_UPDATE_FC_STATE);
+		boolean committed = false;
 		_curDB.beginTransaction();
 		try {
-			// Delete old entry if any.
-			SQLiteStatement dStmt = getCompiledStatement(SQL_DELETE_FCS);
-			dStmt.bindString(1, fc.getLang1Str());
-			dStmt.execute();
-
-			// insert new state entry.
-			SQLiteStatement iStmt = getCompiledStatement(SQL_INSERT_FCS);
-			iStmt.bindString(1, fc.getLang1Str());
-			iStmt.bindLong(2, fc.getLevel());
-			iStmt.bindLong(3, fc.getRightGuessCount());
-			iStmt.execute();
+			for (int i = 0; i < _stateBuffer.size(); ++i) {
+				writeCardState(rStmt, uStmt, _stateBuffer.getID(i),
+						_stateBuffer.getKey(i), _stateBuffer.getLevel(i),
+						_stateBuffer.getRightGuessCount(i));
+			}
+			if (_pendingSession != null) {
+				saveSession(_pendingSession);
+			}
 			_curDB.setTransactionSuccessful();
+			committed = true;
 		} catch (SQLException e) {
 			MsgDispatcher.sendMessageToUI(MsgType.MSG_SHOW_ERROR_MSG, 0, 0,
-					"unable to update id=" + fc.getID());
+					"unable to update " + _stateBuffer.size() + " flashcards");
 		} finally {
 			_curDB.endTransaction();
 		}
+		if (!committed) {
+			MsgDispatcher.sendDelayedMessageToDB(MsgType.MSG_DB_FLUSH_STATE,
+					AppConfig._stateFlushDelay);
+			return;
+		}
+		// only clear after the commit, so a reader that copies the buffer
+		// either gets the state or sees it in the database.
+		_stateBuffer.clear();
+		_pendingSession = null;
+	}
 
-		// this flashcard is no longer used by anyone so release it.
-		fc.release();
+	/**
+	 * write the state of a single card.
+	 */
+	private static void writeCardState(SQLiteStatement rStmt,
+			SQLiteStatement uStmt, int id, long key, int level, int count) {
+		// replace the state entry, keyed by the card key.
+		rStmt.bindLong(1, key);
+		rStmt.bindLong(2, level);
+		rStmt.bindLong(3, count);
+		rStmt.execute();
+
+		// keep the indexed level copy in the flashcard table in sync.
+		uStmt.bindLong(1, level);
+		uStmt.bindLong(2, key);
+		uStmt.bindLong(3, id);
+		uStmt.execute();
+	}
+
+	/**
+	 * write the state of the given flashcard right away, in its own
+	 * transaction. Used when the buffer is full and can not be flushed, so
+	 * that the update is not lost. The user is told if this fails too.
+	 */
+	private void writeFlashcardState(Flashcard fc) {
+		SQLiteStatement rStmt = getCompiledStatement(SQL_REPLACE_CS);
+		SQLiteStatement uStmt = getCompiledStatement(SQL_UPDATE_FC_STATE);
+		_curDB.beginTransaction();
+		try {
+			writeCardState(rStmt, uStmt, fc.getID(), fc.getKey(),
+					fc.getLevel(), fc.getRightGuessCount());
+			_curDB.setTransactionSuccessful();
+		} catch (SQLException e) {
+			Log.e(LP.TAG, "[db] unable to write state of fc " + fc.getID());
+			MsgDispatcher.sendMessageToUI(MsgType.MSG_SHOW_ERROR_MSG, 0, 0,
+					"unable to save the result of the last flashcard");
+		} finally {
+			_curDB.endTransaction();
+		}
+	}
+
+	/**
+	 * write the session to the META table. Must be called within a
+	 * transaction.
+	 */
+	private void saveSession(SessionState session) {
+		StringBuilder resume = new StringBuilder();
+		for (int i = 0; i < session.resumeIds.length; ++i) {
+			if (i > 0)
+				resume.append(',');
+			resume.append(session.resumeIds[i]);
+		}
+		setMetaValue(META_SESSION_LEVEL, Integer.toString(session.level));
+		setMetaValue(META_SESSION_CURRENT, Integer.toString(session.currentId));
+		setMetaValue(META_SESSION_PREVIOUS,
+				Integer.toString(session.previousId));
+		setMetaValue(META_SESSION_SHOW_ALL, session.showEntireCard ? "1" : "0");
+		setMetaValue(META_SESSION_RESUME, resume.toString());
+	}
+
+	/**
+	 * returns the session saved by {@link #saveSession(SessionState)} with
+	 * its current and previous flashcards, or null if there is none.
+	 */
+	private SessionState loadSession() {
+		String level = getMetaValue(META_SESSION_LEVEL);
+		String current = getMetaValue(META_SESSION_CURRENT);
+		String previous = getMetaValue(META_SESSION_PREVIOUS);
+		String resume = getMetaValue(META_SESSION_RESUME);
+		if (level == null || current == null || previous == null
+				|| resume == null)
+			return null;
+
+		SessionState session = new SessionState();
+		try {
+			session.level = Integer.parseInt(level);
+			session.currentId = Integer.parseInt(current);
+			session.previousId = Integer.parseInt(previous);
+			String[] ids = resume.split(",");
+			session.resumeIds = new int[ids.length];
+			for (int i = 0; i < ids.length; ++i) {
+				session.resumeIds[i] = Integer.parseInt(ids[i]);
+			}
+		} catch (NumberFormatException e) {
+			return null;
+		}
+		session.showEntireCard = "1".equals(getMetaValue(META_SESSION_SHOW_ALL));
+		session.current = loadFlashcard(session.currentId);
+		if (session.previousId != 0) {
+			session.previous = loadFlashcard(session.previousId);
+		}
+		return session;
+	}
+
+	/**
+	 * returns the flashcard with the given id, with its buffered state if
+	 * any, or null if there is no such flashcard.
+	 */
+	private Flashcard loadFlashcard(int id) {
+		Cursor c = _curDB.rawQuery((_migration != null) ? SQL_QUERY_ID_MIGRATING
+				: SQL_QUERY_ID, new String[] { Integer.toString(id) });
+		try {
+			if (!c.moveToFirst())
+				return null;
+			Flashcard fc = cursorToFlashcard(c);
+			int i = _stateBuffer.indexOf(id);
+			if (i >= 0) {
+				fc.setLevel(_stateBuffer.getLevel(i));
+				fc.setRightGuessCount(_stateBuffer.getRightGuessCount(i));
+			}
+			return fc;
+		} finally {
+			c.close();
+		}
 	}
 
 	/**
@@ -156,60 +657,82 @@ public class FlashcardDB extends HandlerThread implements Handler.Callback {
 	private Flashcard cursorToFlashcard(Cursor c) {
 		Flashcard fc = Flashcard.acquire();
 		fc.setID(c.getInt(0));
-		fc.setLang1Str(c.getString(1));
-		fc.setLang2Str(c.getString(2));
-		fc.setLevel(c.getInt(3));
-		fc.setRightGuessCount(c.getInt(4));
+		fc.setLang1Str(c.getString(2));
+		fc.setLang2Str(c.getString(3));
+		fc.setLevel(c.getInt(4));
+		fc.setRightGuessCount(c.getInt(5));
+		fc.setFormatted(c.getInt(6) != 0);
+		// the key of a card that was not migrated yet is computed on the fly.
+		if (c.isNull(1)) {
+			fc.setKey(Flashcard.computeKey(fc.getLang1Str()));
+		} else {
+			fc.setKey(c.getLong(1));
+		}
 		return fc;
 	}
 
 	/**
-	 * the actual implementation of query. This just does a straight attempt to
-	 * query for up to {@link #requiredCount} flashcards from the table starting
-	 * at the given id and level. This function will not attempt to wrap to the
-	 * beginning of the table if insufficient results were found.
-	 * 
-	 * The results of this query will be added to the passed in
-	 * {@link QueryResult} object.
+	 * copy the buffered card state changes for a query on a reader thread.
+	 * The card updates go to the db thread and the query to the reader, so
+	 * the update sent right before the query may not be buffered yet. The copy
+	 * waits (up to waitMillis) until the update with the given sequence
+	 * number is. Returns false if it gave up waiting.
 	 */
-	private void queryNoWrap(QueryResult qr, int level, int minId,
-			int requiredCount) {
-		Cursor c = _curDB.rawQuery(SQL_QUERY2, new String[] { "" + minId });
-		if (c.moveToFirst()) {
-			do {
-				// extract fc from cursor and prepend to result chain.
-				Flashcard fc = cursorToFlashcard(c);
-				qr.head = Flashcard.Chain.append(qr.head, fc);
-
-				if (fc.getID() > qr.maxId)
-					qr.maxId = fc.getID();
-				++qr.count;
-			} while (c.moveToNext() && qr.count < requiredCount);
-		}
-		c.close();
+	boolean copyCardState(CardStateBuffer dst, int seq, long waitMillis) {
+		return _stateBuffer.copyTo(dst, seq, waitMillis);
 	}
 
 	/**
 	 * perform a query of the database for the next set of flashcards at the
-	 * given level and starting at given id. At first, a query from the current
-	 * minId is performed. If insufficient results are returned, then a query
-	 * from the beginning of the table is tried.
+	 * given level and starting at given id. If there are not enough flashcards
+	 * at or after minId, the query wraps around to the beginning of the level.
+	 * Both halves are done in a single statement so the result is in keyset
+	 * order and never contains the same flashcard twice.
+	 * <p>
+	 * {@link QueryResult#maxId} is set to the id of the last flashcard in that
+	 * order so the next query can continue right after it.
+	 * <p>
+	 * Called on the db thread with the writer connection or on a
+	 * {@link FlashcardDBReader} thread with its own connection and a copy of
+	 * the buffered state, so only the arguments are used here.
+	 *
+	 * @param overlay
+	 *            buffered state changes that are newer than the database.
+	 * @param migrating
+	 *            true if the state migration is still running.
 	 */
-	private void queryFlashcardSet(int level, int minId) {
-		openDB();
-		int requiredCount = AppConfig._maxQuerySetSize;
-		QueryResult qr = new QueryResult();
-		qr.level = level;
+	void queryFlashcardSet(SQLiteDatabase db, CardStateBuffer overlay,
+			boolean migrating, QueryResult qr) {
+		int level = qr.level;
+		String levelArg = Integer.toString(level);
+		String minIdArg = Integer.toString(qr.minId);
+		String limitArg = Integer.toString(qr.limit);
+		String sql = migrating ? SQL_QUERY_LEVEL_MIGRATING : SQL_QUERY_LEVEL;
+		Cursor c = db.rawQuery(sql, new String[] { levelArg, minIdArg,
+				limitArg, levelArg, minIdArg, limitArg, limitArg });
+		if (c.moveToFirst()) {
+			do {
+				// extract fc from cursor and append to result chain.
+				Flashcard fc = cursorToFlashcard(c);
+				qr.maxId = fc.getID();
+
+				// buffered state changes are newer than the database. Drop the
+				// cards that no longer belong to this level.
+				int i = overlay.indexOf(fc.getID());
+				if (i >= 0) {
+					fc.setLevel(overlay.getLevel(i));
+					fc.setRightGuessCount(overlay.getRightGuessCount(i));
+					if (fc.getLevel() != level) {
+						fc.release();
+						continue;
+					}
+				}
 
-		// perform the first query. If insufficient data was returned,
-		// perform a second query from the beginning of the table.
-		queryNoWrap(qr, level, minId, requiredCount);
-		qr.log(0);
-		if (qr.count < requiredCount && minId > 1) {
-			qr.maxId = 0;
-			queryNoWrap(qr, level, 0, requiredCount);
-			qr.log(1);
+				qr.chain.append(fc);
+			} while (c.moveToNext());
 		}
+		c.close();
+		Trace.event(Trace.QUERY_RESULT, level, qr.chain.size(), qr.maxId);
 
 		// send the query result (potentially partial] to controller.
 		MsgDispatcher.sendMessageToController(MsgType.MSG_RESULT_FC_SET, 0, 0,
@@ -219,21 +742,15 @@ public class FlashcardDB extends HandlerThread implements Handler.Callback {
 	/**
 	 * Insert a set of flashcards (linked list) in a single transaction.
 	 */
-	private void insertFlashcardSet(Flashcard head) {
+	private void insertFlashcardSet(ImportPipeline.Batch batch) {
 		openDB();
-		SQLiteStatement stmt = getCompiledStatement(SQL_INSERT_FC);
 		boolean gotError = false;
+		Flashcard.Chain chain = batch.chain;
 
 		_curDB.beginTransaction();
 		try {
-			for (Flashcard fc = head; fc != null; fc = Flashcard.Chain
-					.getNext(fc)) {
-
-				stmt.bindLong(1, _importState.getRandomId());
-				stmt.bindString(2, fc.getLang1Str());
-				stmt.bindString(3, fc.getLang2Str());
-				stmt.execute();
-			}
+			insertFlashcards(chain);
+			saveImportCheckpoint(batch.resumeOffset, batch.resumeLine);
 			_curDB.setTransactionSuccessful();
 		} catch (SQLException e) {
 			gotError = true;
@@ -243,7 +760,7 @@ public class FlashcardDB extends HandlerThread implements Handler.Callback {
 			_curDB.endTransaction();
 		}
 
-		Flashcard.Chain.releaseChain(head);
+		chain.releaseAll();
 
 		// tell controller to send us more data if insert went fine.
 		if (!gotError) {
@@ -252,6 +769,404 @@ public class FlashcardDB extends HandlerThread implements Handler.Callback {
 		}
 	}
 
+	/**
+	 * import the given chain of flashcards. Must be called within a
+	 * transaction. The chain is not released.
+	 */
+	private void insertFlashcards(Flashcard.Chain chain) {
+		for (Flashcard fc = chain.getHead(); fc != null; fc = Flashcard.Chain
+				.getNext(fc)) {
+			String lang1 = fc.getLang1Str();
+			importFlashcard(0, Flashcard.computeKey(lang1), lang1,
+					fc.getLang2Str(), false);
+		}
+	}
+
+	/**
+	 * import a single flashcard. Must be called within a transaction.
+	 * <p>
+	 * If {@link AppConfig#_formatOnImport} is set, raw texts are stored ready
+	 * for display so that showing a card needs no text processing. The card
+	 * key is always computed from the raw text, so toggling the option does
+	 * not lose the card state.
+	 * <p>
+	 * In a diff import, a card that is already in the table with the same
+	 * content hash is left alone and a card with the same key but other
+	 * content is updated in place, so both keep their id. Only new cards are
+	 * inserted. The hash is over the texts as stored, so a deck import and a
+	 * text import of the same cards match.
+	 *
+	 * @param deckId
+	 *            the precomputed id of the card, 0 to generate one.
+	 * @param formatted
+	 *            true if the texts are already formatted for display.
+	 */
+	private void importFlashcard(int deckId, long key, String lang1,
+			String lang2, boolean formatted) {
+		boolean format = !formatted && AppConfig._formatOnImport;
+		if (format) {
+			lang1 = _formatter.formatEnglish(lang1);
+			lang2 = _formatter.formatSpanish(lang2);
+		}
+		long hash = computeContentHash(lang1, lang2, formatted || format);
+		int id = 0;
+
+		if (_importState.diff) {
+			id = findImportedFlashcard(key, hash);
+			if (id > 0) {
+				++_importState.unchangedCount;
+				return;
+			}
+		}
+
+		if (id < 0) {
+			// same card, new content.
+			SQLiteStatement stmt = getCompiledStatement(SQL_DIFF_UPDATE_FC);
+			stmt.bindString(1, lang1);
+			stmt.bindString(2, lang2);
+			stmt.bindLong(3, (formatted || format) ? 1 : 0);
+			stmt.bindLong(4, hash);
+			stmt.bindLong(5, -id);
+			stmt.execute();
+			++_importState.updatedCount;
+			return;
+		}
+
+		id = newFlashcardId(deckId);
+		SQLiteStatement stmt = getCompiledStatement(SQL_INSERT_FC);
+		stmt.bindLong(1, id);
+		stmt.bindLong(2, key);
+		stmt.bindString(3, lang1);
+		stmt.bindString(4, lang2);
+		stmt.bindLong(5, (formatted || format) ? 1 : 0);
+		stmt.bindLong(6, hash);
+		stmt.bindLong(7, key);
+		stmt.execute();
+		if (_importState.diff) {
+			_importState.seenIds.add(id);
+		}
+		++_importState.insertedCount;
+	}
+
+	/**
+	 * find the existing flashcard that matches an imported card in a diff
+	 * import and mark it as seen. Several cards may have the same key (same
+	 * English text), so a card that was already matched by an earlier entry
+	 * is skipped.
+	 *
+	 * @return the id of an unchanged card, minus the id of a card with the
+	 *         same key but other content, or 0 if there is no such card.
+	 */
+	private int findImportedFlashcard(long key, long hash) {
+		IdSet seenIds = _importState.seenIds;
+		SQLiteStatement stmt = getCompiledStatement(SQL_DIFF_FIND_SAME);
+		stmt.bindLong(1, key);
+		stmt.bindLong(2, hash);
+		int id = (int) stmt.simpleQueryForLong();
+		if (id > 0 && seenIds.add(id)) {
+			return id;
+		}
+
+		// changed card or duplicate entries, look at all cards with this key.
+		int changedId = 0;
+		Cursor c = _curDB.rawQuery(SQL_DIFF_SELECT_KEY,
+				new String[] { Long.toString(key) });
+		try {
+			while (c.moveToNext()) {
+				int rowId = c.getInt(0);
+				if (seenIds.contains(rowId))
+					continue;
+				if (!c.isNull(1) && c.getLong(1) == hash) {
+					seenIds.add(rowId);
+					return rowId;
+				}
+				if (changedId == 0)
+					changedId = rowId;
+			}
+		} finally {
+			c.close();
+		}
+		if (changedId > 0) {
+			seenIds.add(changedId);
+			return -changedId;
+		}
+		return 0;
+	}
+
+	/**
+	 * returns the id for a new flashcard. Generated ids continue the sequence
+	 * of the last (or interrupted) import, so they do not collide with the ids
+	 * of kept cards. Ids that are in use anyway (e.g. from an older import)
+	 * are skipped.
+	 */
+	private int newFlashcardId(int deckId) {
+		int id = (deckId > 0) ? deckId : _importState.getRandomId();
+		if (_importState.diff || _importState.isResumed) {
+			SQLiteStatement stmt = getCompiledStatement(SQL_HAS_ID);
+			while (true) {
+				stmt.bindLong(1, id);
+				if (stmt.simpleQueryForLong() == 0)
+					break;
+				id = _importState.getRandomId();
+			}
+		}
+		return id;
+	}
+
+	/**
+	 * delete the flashcards that were not seen by a diff import, i.e. that
+	 * are no longer in the imported file. Their state is kept in the state
+	 * table, like the state of any card that was removed from the deck.
+	 */
+	private void deleteUnseenFlashcards() {
+		IdSet seenIds = _importState.seenIds;
+		SQLiteStatement stmt = getCompiledStatement(SQL_DELETE_FC);
+		_curDB.beginTransaction();
+		try {
+			Cursor c = _curDB.rawQuery(SQL_SELECT_ALL_IDS, null);
+			try {
+				while (c.moveToNext()) {
+					int id = c.getInt(0);
+					if (!seenIds.contains(id)) {
+						stmt.bindLong(1, id);
+						stmt.execute();
+						++_importState.deletedCount;
+					}
+				}
+			} finally {
+				c.close();
+			}
+			_curDB.setTransactionSuccessful();
+		} catch (SQLException e) {
+			MsgDispatcher.sendMessageToUI(MsgType.MSG_SHOW_ERROR_MSG, 0, 0,
+					"unable to delete removed flashcards");
+		} finally {
+			_curDB.endTransaction();
+		}
+	}
+
+	/**
+	 * hash of the content of a card as stored in the HASH column. A 64-bit
+	 * FNV-1a hash of the texts as stored (formatted if the flag is set) and
+	 * the format flag.
+	 * <p>
+	 * WARNING: hashes are persisted in the database, so this function must
+	 * never change. If it does, the next diff import rewrites every card.
+	 */
+	static long computeContentHash(String lang1, String lang2,
+			boolean formatted) {
+		long h = Flashcard.computeKey(lang1);
+		h = (h ^ 0xffff) * 0x100000001b3L;
+		for (int i = 0, len = lang2.length(); i < len; ++i) {
+			h ^= lang2.charAt(i);
+			h *= 0x100000001b3L;
+		}
+		h ^= formatted ? 1 : 2;
+		h *= 0x100000001b3L;
+		return h;
+	}
+
+	/**
+	 * returns the id generator of the last import, or null if there is none.
+	 */
+	private ShuffleIdGenerator loadIdGenerator() {
+		String key = getMetaValue(META_ID_KEY);
+		String count = getMetaValue(META_ID_COUNT);
+		if (key == null || count == null)
+			return null;
+		try {
+			return new ShuffleIdGenerator(Long.parseLong(key),
+					Integer.parseInt(count));
+		} catch (NumberFormatException e) {
+			return null;
+		}
+	}
+
+	/**
+	 * save the import checkpoint: the position in the import file right after
+	 * the last imported card and the state of the id generator. Must be
+	 * called within each import transaction, so the checkpoint always matches
+	 * the committed cards.
+	 */
+	private void saveImportCheckpoint(long offset, int line) {
+		setMetaValue(META_ID_KEY,
+				Long.toString(_importState.getIdGenerator().getKey()));
+		setMetaValue(META_ID_COUNT,
+				Integer.toString(_importState.getIdGenerator().getCount()));
+		setMetaValue(META_IMPORT_OFFSET, Long.toString(offset));
+		setMetaValue(META_IMPORT_LINE, Integer.toString(line));
+	}
+
+	private String getMetaValue(String name) {
+		Cursor c = _curDB.rawQuery(SQL_GET_META, new String[] { name });
+		try {
+			return c.moveToFirst() ? c.getString(0) : null;
+		} finally {
+			c.close();
+		}
+	}
+
+	private void setMetaValue(String name, String value) {
+		SQLiteStatement stmt = getCompiledStatement(SQL_SET_META);
+		stmt.bindString(1, name);
+		stmt.bindString(2, value);
+		stmt.execute();
+	}
+
+	/**
+	 * insert the batches produced by a pipelined import. Batches that are
+	 * already waiting in the pipeline ring are inserted in one transaction of
+	 * up to {@link AppConfig#_importTxnSize} flashcards or
+	 * {@link AppConfig#_importSliceMillis} ms. Then this method sends itself
+	 * another {@link MsgType#MSG_DB_DRAIN_IMPORT} message rather than looping.
+	 * That message is bulk priority, so waiting interactive messages (card
+	 * queries) are handled first. The ring is never waited on: if it is empty,
+	 * the next drain message is delayed by {@link #IMPORT_DRAIN_RETRY_MS}.
+	 */
+	private void drainImport(ImportPipeline pipeline) {
+		openDB();
+		boolean gotError = false;
+		int txnCount = 0;
+		int progress = -1;
+		long sliceEnd = SystemClock.uptimeMillis()
+				+ AppConfig._importSliceMillis;
+
+		ImportPipeline.Batch batch = pipeline.take();
+		boolean gotBatch = (batch != null);
+		if (gotBatch) {
+			_curDB.beginTransaction();
+		}
+		try {
+			ImportPipeline.Batch lastBatch = null;
+			while (batch != null) {
+				try {
+					insertFlashcards(batch.chain);
+				} finally {
+					batch.chain.releaseAll();
+				}
+				lastBatch = batch;
+				txnCount += batch.count;
+				progress = batch.progress;
+				if (txnCount >= AppConfig._importTxnSize
+						|| SystemClock.uptimeMillis() >= sliceEnd)
+					break;
+				batch = pipeline.take();
+			}
+			if (lastBatch != null) {
+				saveImportCheckpoint(lastBatch.resumeOffset,
+						lastBatch.resumeLine);
+				_curDB.setTransactionSuccessful();
+			}
+		} catch (SQLException e) {
+			gotError = true;
+			pipeline.cancel();
+			MsgDispatcher.sendMessageToUI(MsgType.MSG_SHOW_ERROR_MSG, 0, 0,
+					"unable to insert fc");
+		} finally {
+			if (gotBatch) {
+				_curDB.endTransaction();
+			}
+		}
+
+		if (progress >= 0) {
+			ProgressActivityState.progress = progress;
+			MsgDispatcher.sendMessageToUI(MsgType.MSG_UPDATE_PROGRESS, 0, 0,
+					null);
+		}
+
+		if (!pipeline.isDone()) {
+			if (gotBatch) {
+				MsgDispatcher.sendMessageToDB(MsgType.MSG_DB_DRAIN_IMPORT, 0, 0,
+						pipeline);
+			} else {
+				MsgDispatcher.sendDelayedMessageToDB(
+						MsgType.MSG_DB_DRAIN_IMPORT, 0, 0, pipeline,
+						IMPORT_DRAIN_RETRY_MS);
+			}
+			return;
+		}
+
+		// the pipeline is done: report errors and throughput and finish up.
+		if (!gotError && pipeline.getErrorMsg() != null) {
+			MsgDispatcher.sendMessageToUI(MsgType.MSG_SHOW_ERROR_MSG, 0, 0,
+					pipeline.getErrorMsg());
+		}
+		pipeline.logThroughput();
+		finishImport(!gotError && pipeline.getErrorMsg() == null);
+		ProgressActivityState.finishProgress();
+		MsgDispatcher.sendMessageToUI(MsgType.MSG_UPDATE_PROGRESS, 0, 0, null);
+	}
+
+	/**
+	 * bulk load the next {@link AppConfig#_importTxnSize} cards (or
+	 * {@link AppConfig#_importSliceMillis} ms worth) of a binary deck in a
+	 * single transaction. The cards are read straight from the
+	 * memory mapped file, keys (and ids, if the deck has them) are taken as is
+	 * and preformatted texts are not formatted again. Like
+	 * {@link #drainImport(ImportPipeline)}, this method sends itself another
+	 * {@link MsgType#MSG_DB_IMPORT_DECK} message until the deck is loaded.
+	 */
+	private void importDeck(DeckFile.Reader deck) {
+		openDB();
+		boolean done = false;
+		String errorMsg = null;
+		boolean useIds = deck.hasShuffleIds();
+		boolean formatted = deck.hasFormattedText();
+
+		long sliceEnd = SystemClock.uptimeMillis()
+				+ AppConfig._importSliceMillis;
+
+		_curDB.beginTransaction();
+		try {
+			int txnCount = 0;
+			while (txnCount < AppConfig._importTxnSize) {
+				// checking the clock every card is not worth it.
+				if ((txnCount & 63) == 63
+						&& SystemClock.uptimeMillis() >= sliceEnd)
+					break;
+				if (!deck.next()) {
+					done = true;
+					break;
+				}
+				importFlashcard(useIds ? deck.id : 0, deck.key, deck.lang1,
+						deck.lang2, formatted);
+				++txnCount;
+				++_importState.cardCount;
+			}
+			saveImportCheckpoint(deck.getOffset(), deck.getIndex());
+			_curDB.setTransactionSuccessful();
+		} catch (ImportFileParser.ParserError e) {
+			// keep the cards before the truncation. The import is finished
+			// below, so no checkpoint is needed.
+			_curDB.setTransactionSuccessful();
+			done = true;
+			errorMsg = e.getMessage();
+		} catch (SQLException e) {
+			done = true;
+			errorMsg = "unable to insert fc";
+		} finally {
+			_curDB.endTransaction();
+		}
+
+		ProgressActivityState.progress = deck.getCompletedPercentEstimate();
+		MsgDispatcher.sendMessageToUI(MsgType.MSG_UPDATE_PROGRESS, 0, 0, null);
+
+		if (!done) {
+			MsgDispatcher.sendMessageToDB(MsgType.MSG_DB_IMPORT_DECK, 0, 0,
+					deck);
+			return;
+		}
+
+		if (errorMsg != null) {
+			MsgDispatcher.sendMessageToUI(MsgType.MSG_SHOW_ERROR_MSG, 0, 0,
+					errorMsg);
+		}
+		_importState.logThroughput();
+		finishImport(errorMsg == null);
+		ProgressActivityState.finishProgress();
+		MsgDispatcher.sendMessageToUI(MsgType.MSG_UPDATE_PROGRESS, 0, 0, null);
+	}
+
 	/**
 	 * Determines if the database file already exists.
 	 */
@@ -265,28 +1180,231 @@ public class FlashcardDB extends HandlerThread implements Handler.Callback {
 	private void createSchema() {
 		try {
 			_curDB.execSQL(SQL_CREATE_FC_TBL);
-			_curDB.execSQL(SQL_CREATE_FCS_TBL);
+			_curDB.execSQL(SQL_CREATE_CS_TBL);
+			_curDB.execSQL(SQL_CREATE_META_TBL);
+			_curDB.execSQL(SQL_CREATE_FC_LEVEL_IDX);
+			_curDB.execSQL(SQL_CREATE_FC_KEY_IDX);
+			_curDB.setVersion(DB_VERSION);
 		} catch (SQLException e) {
 			MsgDispatcher.sendMessageToUI(MsgType.MSG_SHOW_ERROR_MSG, 0, 0,
 					"unable to create schema");
 		}
 	}
 
+	/**
+	 * bring the schema of an existing database file up to {@link #DB_VERSION}.
+	 * Each step is done in its own transaction so a failed upgrade leaves the
+	 * file at the last good version.
+	 */
+	private void upgradeSchema() {
+		int version = _curDB.getVersion();
+		if (version >= DB_VERSION)
+			return;
+
+		_curDB.beginTransaction();
+		try {
+			if (version < 1) {
+				_curDB.execSQL(SQL_ADD_FC_LEVEL_COL);
+				_curDB.execSQL(SQL_COPY_FCS_LEVEL);
+				_curDB.execSQL(SQL_CREATE_FC_LEVEL_IDX);
+			}
+			if (version < 2) {
+				// the FCS content is moved over by the state migration.
+				_curDB.execSQL(SQL_ADD_FC_KEY_COL);
+				_curDB.execSQL(SQL_CREATE_CS_TBL);
+			}
+			if (version < 3) {
+				_curDB.execSQL(SQL_ADD_FC_FMT_COL);
+			}
+			if (version < 4) {
+				_curDB.execSQL(SQL_ADD_FC_HASH_COL);
+				_curDB.execSQL(SQL_CREATE_FC_KEY_IDX);
+				_curDB.execSQL(SQL_CREATE_META_TBL);
+			}
+			_curDB.setVersion(DB_VERSION);
+			_curDB.setTransactionSuccessful();
+		} catch (SQLException e) {
+			MsgDispatcher.sendMessageToUI(MsgType.MSG_SHOW_ERROR_MSG, 0, 0,
+					"unable to upgrade schema from version " + version);
+		} finally {
+			_curDB.endTransaction();
+		}
+	}
+
 	/**
 	 * open the database. The database and schema will be created if they are
-	 * not there already.
+	 * not there already. An existing database is upgraded to the current
+	 * schema version. The database is put in WAL mode if possible and the
+	 * reader threads are started once no state migration is running.
 	 */
 	private void openDB() {
 		if (_curDB == null) {
 			boolean dbExists = dbFileExists();
 			_curDB = SQLiteDatabase.openDatabase(AppConfig._dbFullPath, null,
 					SQLiteDatabase.CREATE_IF_NECESSARY);
+			_walEnabled = enableWriteAheadLogging();
 			if (!dbExists) {
 				createSchema();
+			} else {
+				upgradeSchema();
+				startStateMigration();
+				checkInterruptedImport();
+			}
+			if (_migration == null) {
+				startReaders();
+			}
+		}
+	}
+
+	/**
+	 * put the database in WAL mode, so readers on other connections are not
+	 * blocked by the writer and the other way around. WAL needs API 11, older
+	 * devices keep the rollback journal and run all queries on the db thread.
+	 */
+	private boolean enableWriteAheadLogging() {
+		if (Build.VERSION.SDK_INT < Build.VERSION_CODES.HONEYCOMB)
+			return false;
+		boolean enabled = _curDB.enableWriteAheadLogging();
+		if (!enabled) {
+			Log.w(LP.TAG, "[db] unable to enable WAL mode");
+		}
+		return enabled;
+	}
+
+	/**
+	 * start the {@link AppConfig#_dbReaderCount} reader threads and route the
+	 * queries to them. The readers are only started in WAL mode, and not
+	 * during the state migration, as the query during migration reads the FCS
+	 * table that is dropped at its end.
+	 */
+	private void startReaders() {
+		if (!_walEnabled || _readers != null || AppConfig._dbReaderCount <= 0)
+			return;
+
+		_readers = new FlashcardDBReader[AppConfig._dbReaderCount];
+		MessageBus.Endpoint[] endpoints = new MessageBus.Endpoint[_readers.length];
+		for (int i = 0; i < _readers.length; ++i) {
+			String name = "db-reader-" + (i + 1);
+			_readers[i] = new FlashcardDBReader(this, name);
+			endpoints[i] = _bus.startEndpoint(name, _readers[i]);
+		}
+		MsgDispatcher.setDbReaderEndpoints(endpoints);
+		Log.i(LP.TAG, "[db] started " + _readers.length + " reader threads");
+	}
+
+	// -----------------------------------------------------------------------
+	// migration of the old text keyed FCS state table to the CS table.
+	// -----------------------------------------------------------------------
+
+	/**
+	 * start the background migration of the FCS state table if it is still
+	 * present in the database. The migration is done in chunks, one chunk per
+	 * {@link MsgType#MSG_DB_MIGRATE_STATE} message, so queries and updates are
+	 * served in between chunks. It is restartable: if the app dies during the
+	 * migration, it just starts over on the next open.
+	 */
+	private void startStateMigration() {
+		SQLiteStatement stmt = getCompiledStatement(SQL_HAS_FCS_TBL);
+		if (stmt.simpleQueryForLong() == 0)
+			return;
+
+		Log.i(LP.TAG, "[db] starting card state migration");
+		_migration = new StateMigration();
+		MsgDispatcher.sendMessageToDB(MsgType.MSG_DB_MIGRATE_STATE, 0, 0, null);
+	}
+
+	/**
+	 * migrate the next chunk of rows. The FCS rows are copied to the CS table
+	 * first, then the KEY column of the flashcards is filled in. Once both are
+	 * done, the FCS table is dropped.
+	 */
+	private void migrateStateChunk() {
+		if (_migration == null) {
+			// spurious message after migration was completed.
+			return;
+		}
+
+		int rowCount = 0;
+		_curDB.beginTransaction();
+		try {
+			if (!_migration.copiedState) {
+				rowCount = migrateStateRows();
+				if (rowCount < MIGRATE_CHUNK_SIZE) {
+					_migration.copiedState = true;
+					_migration.lastRowId = 0;
+				}
+			} else {
+				rowCount = migrateKeyRows();
+				if (rowCount < MIGRATE_CHUNK_SIZE) {
+					_curDB.execSQL(SQL_DROP_FCS_TBL);
+					_migration = null;
+				}
 			}
+			_curDB.setTransactionSuccessful();
+		} catch (SQLException e) {
+			_migration = null;
+			MsgDispatcher.sendMessageToUI(MsgType.MSG_SHOW_ERROR_MSG, 0, 0,
+					"unable to migrate card state");
+		} finally {
+			_curDB.endTransaction();
+		}
+
+		if (_migration != null) {
+			MsgDispatcher.sendMessageToDB(MsgType.MSG_DB_MIGRATE_STATE, 0, 0,
+					null);
+		} else {
+			Log.i(LP.TAG, "[db] card state migration done");
+			startReaders();
 		}
 	}
 
+	/**
+	 * copy the next chunk of FCS rows to the CS table. Returns the number of
+	 * rows processed.
+	 */
+	private int migrateStateRows() {
+		SQLiteStatement iStmt = getCompiledStatement(SQL_MIGRATE_INSERT_CS);
+		Cursor c = _curDB.rawQuery(SQL_MIGRATE_SELECT_FCS,
+				new String[] { Long.toString(_migration.lastRowId) });
+		int rowCount = 0;
+		try {
+			while (c.moveToNext()) {
+				_migration.lastRowId = c.getLong(0);
+				iStmt.bindLong(1, Flashcard.computeKey(c.getString(1)));
+				iStmt.bindLong(2, c.getInt(2));
+				iStmt.bindLong(3, c.getInt(3));
+				iStmt.execute();
+				++rowCount;
+			}
+		} finally {
+			c.close();
+		}
+		return rowCount;
+	}
+
+	/**
+	 * fill in the KEY column for the next chunk of flashcards. Returns the
+	 * number of rows processed.
+	 */
+	private int migrateKeyRows() {
+		SQLiteStatement uStmt = getCompiledStatement(SQL_MIGRATE_UPDATE_FC_KEY);
+		Cursor c = _curDB.rawQuery(SQL_MIGRATE_SELECT_FC,
+				new String[] { Long.toString(_migration.lastRowId) });
+		int rowCount = 0;
+		try {
+			while (c.moveToNext()) {
+				_migration.lastRowId = c.getLong(0);
+				uStmt.bindLong(1, Flashcard.computeKey(c.getString(1)));
+				uStmt.bindLong(2, _migration.lastRowId);
+				uStmt.execute();
+				++rowCount;
+			}
+		} finally {
+			c.close();
+		}
+		return rowCount;
+	}
+
 	/**
 	 * Maintain a cache of pre-compiled SQL statements. The cached statements
 	 * should be destroyed once the database is closed.
@@ -324,22 +1442,65 @@ public class FlashcardDB extends HandlerThread implements Handler.Callback {
 	// _curDB = null;
 	// }
 
+	/**
+	 * progress of the FCS to CS state migration.
+	 */
+	private static class StateMigration {
+		boolean copiedState = false;
+		long lastRowId = 0;
+	}
+
 	private static class ImportState {
-		private HashSet<Integer> _importedIds = new HashSet<Integer>(1000);
-		private Random _random = new Random();
+		final boolean diff;
+		// true if this import continues an interrupted import.
+		final boolean isResumed;
+		// ids of the existing cards matched by a diff import.
+		final IdSet seenIds;
+		private final ShuffleIdGenerator _idGenerator;
+		private long _startTime = SystemClock.elapsedRealtime();
+		int cardCount = 0;
+		int unchangedCount = 0;
+		int updatedCount = 0;
+		int insertedCount = 0;
+		int deletedCount = 0;
+
+		ImportState(ShuffleIdGenerator idGenerator, ImportCheckpoint checkpoint) {
+			_idGenerator = idGenerator;
+			diff = checkpoint.diff;
+			isResumed = checkpoint.isResume;
+			seenIds = diff ? new IdSet() : null;
+		}
 
 		/**
-		 * generate a random id value in the range [1,MAX_INT) that has not
-		 * already been generated during this import cycle.
+		 * generate a random id value in the range [1,2^30] that has not
+		 * already been generated by this generator.
 		 */
 		public int getRandomId() {
-			Integer r;
-			do {
-				// TODO: reset max to MAX_VALUE
-//				r = _random.nextInt(Integer.MAX_VALUE - 2) + 1;
-				r = _random.nextInt(99999) + 1;
-			} while (!_importedIds.add(r));
-			return r.intValue();
+			return _idGenerator.next();
+		}
+
+		ShuffleIdGenerator getIdGenerator() {
+			return _idGenerator;
+		}
+
+		/**
+		 * log the number of imported cards and the import throughput.
+		 */
+		void logThroughput() {
+			long elapsed = Math.max(1, SystemClock.elapsedRealtime()
+					- _startTime);
+			Log.i(LP.TAG, "[import] " + cardCount + " cards in " + elapsed
+					+ " ms (" + (cardCount * 1000L / elapsed) + " cards/sec)");
+		}
+
+		/**
+		 * log how many cards were written by the import.
+		 */
+		void logStats() {
+			Log.i(LP.TAG, "[import] " + (diff ? "diff" : "full") + ": "
+					+ insertedCount + " inserted, " + updatedCount
+					+ " updated, " + deletedCount + " deleted, "
+					+ unchangedCount + " unchanged");
 		}
 	}
 }
@@ -0,0 +1,67 @@
+package com.tajeldin.flashcard;
+
+import android.database.sqlite.SQLiteDatabase;
+import android.util.Log;
+
+/**
+ * A reader thread of the database component. Each reader has its own read
+ * only connection to the database, so with the database in WAL mode the
+ * readers run their queries in parallel with each other and with the writes
+ * of the {@link FlashcardDB} thread.
+ * <p>
+ * Readers are started by the db once WAL mode is enabled and are reached
+ * through {@link MsgDispatcher#sendMessageToDbReader(int, int, int, Object)}.
+ * Only {@link MsgType#MSG_QUERY_FC_SET} is handled here.
+ */
+class FlashcardDBReader implements MessageBus.Receiver {
+
+	private final FlashcardDB _writer;
+	private final String _name;
+	private SQLiteDatabase _readDB = null;
+
+	// how long a query waits for the db thread to buffer the last card
+	// update sent before it.
+	private static final long STATE_WAIT_MS = 500;
+
+	// copy of the buffered card state of the writer, taken for each query.
+	private final CardStateBuffer _stateOverlay = new CardStateBuffer(
+			AppConfig._stateFlushSize);
+
+	FlashcardDBReader(FlashcardDB writer, String name) {
+		_writer = writer;
+		_name = name;
+	}
+
+	public boolean handleMessage(BusMessage msg) {
+		switch (msg.what) {
+		case MsgType.MSG_QUERY_FC_SET:
+			queryFlashcardSet((QueryResult) msg.obj);
+			break;
+		default:
+			Log.e(LP.TAG, "[" + _name + "] unknown message type: "
+					+ msg.what);
+			return false;
+		}
+
+		return true;
+	}
+
+	/**
+	 * query the next set of flashcards at a level on the connection of this
+	 * reader. The buffered state is copied before the query starts, once it
+	 * holds the card updates sent before the query. The query then sees the
+	 * database either before or after the writer commits that state, and both
+	 * agree with the copy.
+	 */
+	private void queryFlashcardSet(QueryResult qr) {
+		if (_readDB == null) {
+			_readDB = SQLiteDatabase.openDatabase(AppConfig._dbFullPath, null,
+					SQLiteDatabase.OPEN_READONLY);
+		}
+		if (!_writer.copyCardState(_stateOverlay, qr.updateSeq, STATE_WAIT_MS)) {
+			Log.w(LP.TAG, "[" + _name + "] card update " + qr.updateSeq
+					+ " not buffered in time, query may see older state");
+		}
+		_writer.queryFlashcardSet(_readDB, _stateOverlay, false, qr);
+	}
+}
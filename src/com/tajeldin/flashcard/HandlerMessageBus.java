@@ -0,0 +1,93 @@
+package com.tajeldin.flashcard;
+
+import android.os.Handler;
+import android.os.HandlerThread;
+import android.os.Looper;
+import android.os.Message;
+import android.os.SystemClock;
+
+/**
+ * The {@link MessageBus} of the app. Each endpoint is a HandlerThread, and
+ * messages are plain android Messages queued by target time in its looper.
+ */
+public class HandlerMessageBus implements MessageBus {
+
+	public Endpoint startEndpoint(String name, Receiver receiver) {
+		HandlerThread thread = new HandlerThread(name);
+		thread.start();
+		return createEndpoint(thread.getLooper(), receiver);
+	}
+
+	public long uptimeMillis() {
+		return SystemClock.uptimeMillis();
+	}
+
+	/**
+	 * returns an endpoint for a receiver on an existing looper, e.g. the
+	 * {@link UiHandler} on the main looper.
+	 */
+	public static Endpoint createEndpoint(Looper looper, Receiver receiver) {
+		return new HandlerEndpoint(new Handler(looper, new ReceiverCallback(
+				receiver)));
+	}
+
+	/**
+	 * hands the messages of a looper to a receiver. The bus message is reused
+	 * for every message, as they are all handled on the same thread.
+	 */
+	private static class ReceiverCallback implements Handler.Callback {
+		private final Receiver _receiver;
+		private final BusMessage _msg = new BusMessage();
+
+		ReceiverCallback(Receiver receiver) {
+			_receiver = receiver;
+		}
+
+		public boolean handleMessage(Message m) {
+			_msg.what = m.what;
+			_msg.arg1 = m.arg1;
+			_msg.arg2 = m.arg2;
+			_msg.obj = m.obj;
+			_msg.when = m.getWhen();
+			try {
+				return MsgDispatcher.dispatch(_receiver, _msg,
+						SystemClock.uptimeMillis());
+			} finally {
+				_msg.obj = null;
+			}
+		}
+	}
+
+	private static class HandlerEndpoint implements Endpoint {
+		private final Handler _handler;
+
+		HandlerEndpoint(Handler handler) {
+			_handler = handler;
+		}
+
+		public boolean send(int what, int arg1, int arg2, Object obj,
+				long boostMillis) {
+			// a target time of 0 means front of queue to the looper, so never
+			// go below 1.
+			long when = Math.max(1, SystemClock.uptimeMillis() - boostMillis);
+			return _handler.sendMessageAtTime(Message.obtain(_handler, what,
+					arg1, arg2, obj), when);
+		}
+
+		public boolean sendDelayed(final int what, final int arg1,
+				final int arg2, final Object obj, long delayMillis,
+				final long boostMillis) {
+			// send the message once it is due, so it is queued (and timed) as
+			// if it was sent at that time.
+			return _handler.postDelayed(new Runnable() {
+				public void run() {
+					send(what, arg1, arg2, obj, boostMillis);
+				}
+			}, delayMillis);
+		}
+
+		public void removeMessages(int what) {
+			_handler.removeMessages(what);
+		}
+	}
+}
@@ -7,6 +7,7 @@ package com.tajeldin.flashcard;
 import android.app.Activity;
 import android.content.Intent;
 import android.os.Bundle;
+import android.os.Looper;
 import android.util.Log;
 import android.view.GestureDetector;
 import android.view.Menu;
@@ -30,9 +31,7 @@ public class MainActivity extends Activity {
 	// -----------------------------------------------------------------------
 	// state of currently displayed flashcard.
 	// -----------------------------------------------------------------------
-	// TODO: move app state to FlashcardApp class.
 	private boolean _waitingForNextCard = false;
-	private Flashcard _prevFlashcard = null;
 
 	@Override
 	public void onCreate(Bundle savedInstanceState) {
@@ -42,9 +41,10 @@ public class MainActivity extends Activity {
 		super.onCreate(savedInstanceState);
 		setContentView(R.layout.main);
 
-		// create the UI handler here so it will be associated with the main
+		// create the UI endpoint here so it will be associated with the main
 		// UI thread.
-		MsgDispatcher.setUiHandler(new UiHandler());
+		MsgDispatcher.setUiEndpoint(HandlerMessageBus.createEndpoint(
+				Looper.getMainLooper(), new UiHandler()));
 
 		_topText = (TextView) findViewById(R.id.text_top);
 		_bottomText = (TextView) findViewById(R.id.text_bottom);
@@ -99,6 +99,41 @@ public class MainActivity extends Activity {
 			_instance._waitingForNextCard = false;
 			_instance.updateDisplay();
 		}
+		MsgStats.finishCardRequest();
+	}
+
+	/**
+	 * restore the card on screen, how much of it is shown and the previous
+	 * card from the saved session. Only the parts the user has not changed
+	 * yet are restored. Called from the {@link UiHandler}.
+	 */
+	static synchronized void restoreDisplay(SessionState session) {
+		FlashcardApp app = FlashcardApp.getInstance();
+		if (_instance != null && _instance._waitingForNextCard) {
+			// the user already moved on.
+			session.releaseCards();
+			return;
+		}
+
+		Flashcard fc = app.getCurrentFlashcard();
+		if (fc == null && session.current != null) {
+			// no snapshot, show the card from the db.
+			fc = session.current;
+			session.current = null;
+			app.setCurrentFlashcard(fc);
+		}
+		if (fc != null && fc.getID() == session.currentId) {
+			app.setShowEntireCard(session.showEntireCard);
+			if (app.getPreviousFlashcard() == null && session.previous != null) {
+				app.setPreviousFlashcard(session.previous);
+				session.previous = null;
+			}
+		}
+		session.releaseCards();
+
+		if (_instance != null) {
+			_instance.updateDisplay();
+		}
 	}
 
 	/**
@@ -118,10 +153,16 @@ public class MainActivity extends Activity {
 			lang2Text = fc.getLang2Str();
 		}
 
-		_topText.setText(StringFormatter.formatEnglishString(lang1Text));
-		_bottomText.setText(StringFormatter.formatSpanishString(lang2Text));
+		// texts formatted at import time are displayed as is.
+		if (!fc.isFormatted()) {
+			lang1Text = StringFormatter.formatEnglishString(lang1Text);
+			lang2Text = StringFormatter.formatSpanishString(lang2Text);
+		}
+		_topText.setText(lang1Text);
+		_bottomText.setText(lang2Text);
 		_statusText.setText("id: " + fc.getID() + "   level: " + fc.getLevel()
 				+ "   count: " + fc.getRightGuessCount());
+		MsgStats.cardShown();
 	}
 
 	/**
@@ -147,6 +188,10 @@ public class MainActivity extends Activity {
 			MsgDispatcher.sendMessageToController(MsgType.MSG_MENU_IMPORT, 0,
 					0, null);
 			return true;
+		case R.id.menu_dump_stats:
+			MsgDispatcher.sendMessageToController(
+					MsgType.MSG_MENU_DUMP_STATS, 0, 0, null);
+			return true;
 		}
 		return super.onOptionsItemSelected(item);
 	}
@@ -179,7 +224,12 @@ public class MainActivity extends Activity {
 		if (LP.LOG_LIFECYCLE_EVENTS)
 			Log.d(LP.TAG, "[MA] OnPause() called");
 
-		FlashcardApp.getInstance().saveState();
+		// make sure buffered guess results are not lost if we get killed. A
+		// saved session is written in the same transaction as them.
+		if (!FlashcardApp.getInstance().saveState()) {
+			MsgDispatcher.sendMessageToDB(MsgType.MSG_DB_FLUSH_STATE, 0, 0,
+					null);
+		}
 	}
 
 	@Override
@@ -208,14 +258,15 @@ public class MainActivity extends Activity {
 	 */
 	@Override
 	public void onBackPressed() {
+		Flashcard prev = FlashcardApp.getInstance().getPreviousFlashcard();
 		Log.v(LP.TAG, "[MA] onBackPressed called. "
-				+ ((_prevFlashcard == null) ? "p=null" : "notnull"));
-		if (_prevFlashcard == null) {
+				+ ((prev == null) ? "p=null" : "notnull"));
+		if (prev == null) {
 			super.onBackPressed();
 		} else {
-			FlashcardApp.getInstance().setCurrentFlashcard(_prevFlashcard);
+			FlashcardApp.getInstance().setCurrentFlashcard(prev);
 			FlashcardApp.getInstance().setShowEntireCard(true);
-			_prevFlashcard = null;
+			FlashcardApp.getInstance().setPreviousFlashcard(null);
 			_waitingForNextCard = false;
 			updateDisplay();
 		}
@@ -238,16 +289,19 @@ public class MainActivity extends Activity {
 			}
 			_waitingForNextCard = true;
 
-			MsgDispatcher.sendMessageToController(MsgType.MSG_GET_NEXT_FC, 0,
-					0, null);
+			MsgStats.startCardRequest();
+			MsgDispatcher
+					.sendUniqueMessageToController(MsgType.MSG_GET_NEXT_FC);
 
 			Flashcard fc = FlashcardApp.getInstance().getCurrentFlashcard();
 			if (fc != null) {
 				// save current fc as the previous fc. must clone it as the one
 				// we send to update guess count may be released soon.
-				if (_prevFlashcard != null)
-					_prevFlashcard.release();
-				_prevFlashcard = fc.clone();
+				Flashcard prev = FlashcardApp.getInstance()
+						.getPreviousFlashcard();
+				if (prev != null)
+					prev.release();
+				FlashcardApp.getInstance().setPreviousFlashcard(fc.clone());
 
 				int arg1 = isCorrectGuess ? 1 : 0;
 				MsgDispatcher.sendMessageToController(